@@ -0,0 +1,128 @@
+package com.example.xyzreader.benchmark;
+
+import android.app.Activity;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import com.example.xyzreader.data.DataBenchmarks;
+import com.example.xyzreader.remote.FeedBenchmarks;
+import com.example.xyzreader.ui.UiBenchmarks;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmark suite on the device, without any network, and writes the results as JSON to
+ * the app's external files dir so they can be pulled and diffed across commits:
+ * <pre>
+ *     adb shell am start -n com.example.xyzreader/.benchmark.BenchmarkActivity \
+ *             --es sizes 100,1000,10000,50000 --ei iterations 5
+ *     adb pull /sdcard/Android/data/com.example.xyzreader/files/benchmark-latest.json
+ * </pre>
+ */
+public class BenchmarkActivity extends Activity {
+    private static final String TAG = "Benchmark";
+
+    public static final String EXTRA_SIZES = "sizes";
+    public static final String EXTRA_WARMUP_ITERATIONS = "warmup_iterations";
+    public static final String EXTRA_ITERATIONS = "iterations";
+
+    private static final int[] DEFAULT_SIZES = {100, 1000, 10000, 50000};
+    private static final int[] DIVIDER_CHILD_COUNTS = {10, 50};
+    private static final int DEFAULT_WARMUP_ITERATIONS = 1;
+    private static final int DEFAULT_ITERATIONS = 5;
+
+    private TextView mOutputView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        mOutputView = new TextView(this);
+        mOutputView.setTypeface(Typeface.MONOSPACE);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(mOutputView);
+        setContentView(scrollView);
+
+        new Thread(mSuite, TAG).start();
+    }
+
+    private final Runnable mSuite = new Runnable() {
+        @Override
+        public void run() {
+            int[] sizes = parseSizes(getIntent().getStringExtra(EXTRA_SIZES));
+            BenchmarkRunner runner = new BenchmarkRunner(
+                    getIntent().getIntExtra(EXTRA_WARMUP_ITERATIONS, DEFAULT_WARMUP_ITERATIONS),
+                    getIntent().getIntExtra(EXTRA_ITERATIONS, DEFAULT_ITERATIONS));
+
+            List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+            cases.addAll(FeedBenchmarks.create(sizes));
+            cases.addAll(DataBenchmarks.create(BenchmarkActivity.this, sizes));
+            cases.addAll(UiBenchmarks.create(BenchmarkActivity.this, sizes, DIVIDER_CHILD_COUNTS));
+
+            try {
+                JSONObject results = runner.run(cases, new BenchmarkRunner.Listener() {
+                    @Override
+                    public void onCaseFinished(BenchmarkCase benchmark, JSONObject result) {
+                        Log.i(TAG, result.toString());
+                        append(result.toString());
+                    }
+                });
+                String json = BenchmarkRunner.toString(results);
+                write(json);
+                append("Done");
+            } catch (Exception e) {
+                Log.e(TAG, "Benchmark failed", e);
+                append("Failed: " + e);
+            }
+        }
+    };
+
+    private void append(final String line) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mOutputView.append(line + "\n");
+            }
+        });
+    }
+
+    /* Writes both a timestamped file and a stable "latest" one that scripts can pull */
+    private void write(String json) throws IOException {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            throw new IOException("External storage isn't available");
+        }
+        byte[] bytes = json.getBytes("UTF-8");
+        for (String name : new String[]{
+                "benchmark-" + System.currentTimeMillis() + ".json", "benchmark-latest.json"}) {
+            FileOutputStream out = new FileOutputStream(new File(dir, name));
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static int[] parseSizes(String sizes) {
+        if (TextUtils.isEmpty(sizes)) {
+            return DEFAULT_SIZES;
+        }
+        String[] parts = sizes.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.xyzreader.benchmark;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A single benchmark, run repeatedly by {@link BenchmarkRunner}. Only {@link #run()} is timed;
+ * anything it needs should be prepared in {@link #setUp()}.
+ */
+public abstract class BenchmarkCase {
+    private final String mName;
+    private final int mSize;
+
+    protected BenchmarkCase(String name, int size) {
+        mName = name;
+        mSize = size;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /** The size of the input, usually a number of articles. */
+    public int getSize() {
+        return mSize;
+    }
+
+    /** Whether {@link #run()} touches views and must happen on the main thread. */
+    public boolean runsOnMainThread() {
+        return false;
+    }
+
+    public void setUp() throws Exception {
+    }
+
+    public abstract void run() throws Exception;
+
+    public void tearDown() throws Exception {
+    }
+
+    /** Anything else the case measured, such as counts, to report next to its timings. */
+    public JSONObject getExtras() throws JSONException {
+        return null;
+    }
+}
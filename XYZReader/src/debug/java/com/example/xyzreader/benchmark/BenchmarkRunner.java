@@ -0,0 +1,155 @@
+package com.example.xyzreader.benchmark;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.xyzreader.BuildConfig;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs {@link BenchmarkCase}s and collects their timings as JSON, one object per case with the
+ * min, median, 90th percentile, mean and max of the measured iterations in microseconds. The
+ * runner itself must be called from a background thread.
+ */
+public class BenchmarkRunner {
+    public interface Listener {
+        void onCaseFinished(BenchmarkCase benchmark, JSONObject result);
+    }
+
+    private final int mWarmupIterations;
+    private final int mIterations;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    public BenchmarkRunner(int warmupIterations, int iterations) {
+        mWarmupIterations = warmupIterations;
+        mIterations = iterations;
+    }
+
+    public JSONObject run(List<BenchmarkCase> cases, Listener listener) throws Exception {
+        JSONArray results = new JSONArray();
+        for (BenchmarkCase benchmark : cases) {
+            JSONObject result = run(benchmark);
+            results.put(result);
+            if (listener != null) {
+                listener.onCaseFinished(benchmark, result);
+            }
+        }
+
+        return new JSONObject()
+                .put("timestamp", System.currentTimeMillis())
+                .put("build", new JSONObject()
+                        .put("version_name", BuildConfig.VERSION_NAME)
+                        .put("version_code", BuildConfig.VERSION_CODE))
+                .put("device", new JSONObject()
+                        .put("model", Build.MODEL)
+                        .put("sdk", Build.VERSION.SDK_INT))
+                .put("warmup_iterations", mWarmupIterations)
+                .put("iterations", mIterations)
+                .put("results", results);
+    }
+
+    private JSONObject run(final BenchmarkCase benchmark) throws Exception {
+        runStep(benchmark, new Step() {
+            @Override
+            public void run() throws Exception {
+                benchmark.setUp();
+            }
+        });
+
+        long[] micros = new long[mIterations];
+        try {
+            for (int i = 0; i < mWarmupIterations; i++) {
+                runOnce(benchmark);
+            }
+            for (int i = 0; i < mIterations; i++) {
+                micros[i] = runOnce(benchmark);
+            }
+        } finally {
+            runStep(benchmark, new Step() {
+                @Override
+                public void run() throws Exception {
+                    benchmark.tearDown();
+                }
+            });
+        }
+
+        Arrays.sort(micros);
+        long sum = 0;
+        for (long value : micros) {
+            sum += value;
+        }
+        JSONObject result = new JSONObject()
+                .put("name", benchmark.getName())
+                .put("size", benchmark.getSize())
+                .put("min_us", micros[0])
+                .put("p50_us", micros[micros.length / 2])
+                .put("p90_us", micros[(int) Math.ceil(micros.length * 0.9) - 1])
+                .put("mean_us", sum / micros.length)
+                .put("max_us", micros[micros.length - 1]);
+        JSONObject extras = benchmark.getExtras();
+        if (extras != null) {
+            result.put("extras", extras);
+        }
+        return result;
+    }
+
+    private long runOnce(final BenchmarkCase benchmark) throws Exception {
+        final long[] micros = new long[1];
+        runStep(benchmark, new Step() {
+            @Override
+            public void run() throws Exception {
+                long start = System.nanoTime();
+                benchmark.run();
+                micros[0] = (System.nanoTime() - start) / 1000;
+            }
+        });
+        return micros[0];
+    }
+
+    /* Runs the step on the thread the benchmark asks for, and waits for it */
+    private void runStep(BenchmarkCase benchmark, final Step step) throws Exception {
+        if (!benchmark.runsOnMainThread()) {
+            step.run();
+            return;
+        }
+
+        final Exception[] error = new Exception[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    step.run();
+                } catch (Exception e) {
+                    error[0] = e;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        done.await();
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    static String toString(JSONObject result) {
+        try {
+            return result.toString(2);
+        } catch (JSONException e) {
+            return result.toString();
+        }
+    }
+}
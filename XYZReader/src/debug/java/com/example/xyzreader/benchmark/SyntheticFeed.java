@@ -0,0 +1,84 @@
+package com.example.xyzreader.benchmark;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates feeds in the same format as the real {@code data.json}. The output only depends on
+ * the article count, so results are comparable from one run, and one commit, to the next.
+ */
+public class SyntheticFeed {
+    private static final long SEED = 0x5eed;
+    private static final int PARAGRAPHS = 4;
+
+    private static final String[] WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit",
+            "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore",
+            "magna", "aliqua", "enim", "ad", "minim", "veniam", "quis", "nostrud",
+    };
+
+    private SyntheticFeed() {
+    }
+
+    public static byte[] generate(int articles) {
+        try {
+            return generateString(articles).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String generateString(int articles) {
+        Random random = new Random(SEED);
+        StringBuilder json = new StringBuilder(articles * 1024);
+        json.append('[');
+        for (int i = 0; i < articles; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(i)
+                    .append("\",\"author\":\"").append(sentence(random, 2))
+                    .append("\",\"title\":\"").append(sentence(random, 6))
+                    .append("\",\"body\":\"").append(body(random))
+                    .append("\",\"thumb\":\"https://example.com/thumbs/").append(i).append(".jpg")
+                    .append("\",\"photo\":\"https://example.com/photos/").append(i).append(".jpg")
+                    .append("\",\"aspect_ratio\":\"")
+                    .append(String.format(Locale.US, "%.3f", 0.75f + random.nextFloat()))
+                    .append("\",\"published_date\":\"")
+                    .append(String.format(Locale.US, "20%02d-%02d-%02dT%02d:00:00.000Z",
+                            10 + random.nextInt(6), 1 + random.nextInt(12),
+                            1 + random.nextInt(28), random.nextInt(24)))
+                    .append("\"}");
+        }
+        json.append(']');
+        return json.toString();
+    }
+
+    /** An HTML article body like the ones in the real feed, with line breaks and a link. */
+    public static String body(Random random) {
+        StringBuilder body = new StringBuilder();
+        for (int p = 0; p < PARAGRAPHS; p++) {
+            if (p > 0) {
+                body.append("<br /><br />");
+            }
+            body.append(sentence(random, 40 + random.nextInt(40)));
+            if (p == 0) {
+                body.append(" <a href='https://example.com'>").append(sentence(random, 3))
+                        .append("</a>");
+            }
+        }
+        return body.toString();
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.toString();
+    }
+}
@@ -0,0 +1,577 @@
+package com.example.xyzreader.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+import android.os.Debug;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+import android.text.format.Time;
+
+import com.example.xyzreader.benchmark.BenchmarkCase;
+import com.example.xyzreader.benchmark.SyntheticFeed;
+import com.example.xyzreader.remote.Feed;
+import com.example.xyzreader.remote.FeedSource;
+import com.example.xyzreader.remote.RemoteEndpointUtil;
+import com.example.xyzreader.remote.StubFeedServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Benchmarks for the data layer: building the rows in {@link UpdaterService}, writing them with
+ * {@link ItemsProvider#applyBatch(ArrayList)}, building selections with {@link SelectionBuilder},
+ * querying single articles and the whole list, reading the first screen of the list on a cold
+ * start, from the database or from the {@link ListSnapshot}, and whole syncs from a slow local
+ * server. The provider runs against its own database file, so the articles the app shows are
+ * left alone.
+ */
+public class DataBenchmarks {
+    private static final String DATABASE_PREFIX = "benchmark_";
+    private static final String INLINE_BODY_DATABASE_NAME = DATABASE_PREFIX + "inline_body.db";
+    private static final String BENCHMARK_SOURCE_ID = "benchmark";
+    private static final int QUERIES_PER_RUN = 1000;
+    private static final int QUERIES_FOR_ALLOCATIONS = 100;
+    /* About as many cards as the grid shows at once */
+    private static final int FIRST_SCREEN_ROWS = 12;
+
+    /* A slow mobile link for the end-to-end syncs, which are too slow to run on big feeds */
+    private static final long SYNC_LATENCY_MILLIS = 150;
+    private static final int SYNC_BYTES_PER_SECOND = 512 * 1024;
+    private static final int SYNC_PAGE_SIZE = 50;
+    private static final int MAX_SYNC_SIZE = 1000;
+
+    private DataBenchmarks() {
+    }
+
+    /*
+     * A provider on its own database file, which the fixture's context also resolves the items
+     * authority to, so code that writes through a content resolver writes to it
+     */
+    private static class ProviderFixture {
+        private final Context mContext;
+        private final ItemsProvider mProvider;
+
+        ProviderFixture(Context context) {
+            final MockContentResolver resolver = new MockContentResolver();
+            mContext = new RenamingDelegatingContext(context, DATABASE_PREFIX) {
+                @Override
+                public ContentResolver getContentResolver() {
+                    return resolver;
+                }
+            };
+            mProvider = new ItemsProvider();
+            mProvider.attachInfo(mContext, null);
+            resolver.addProvider(ItemsContract.CONTENT_AUTHORITY, mProvider);
+        }
+
+        Context getContext() {
+            return mContext;
+        }
+
+        ItemsProvider getProvider() {
+            return mProvider;
+        }
+
+        /* Closes the provider and deletes its database */
+        void close() {
+            mProvider.shutdown();
+            mContext.deleteDatabase(ItemsDatabase.DATABASE_NAME);
+        }
+    }
+
+    public static List<BenchmarkCase> create(Context context, int[] sizes) {
+        List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+        for (int size : sizes) {
+            cases.add(newBuildValuesCase(size));
+        }
+        for (int size : sizes) {
+            cases.add(newApplyBatchCase(context, size));
+        }
+        for (int size : sizes) {
+            cases.add(newSelectionBuilderCase(size));
+        }
+        for (int size : sizes) {
+            cases.add(newQueryByIdCase(context, size, false));
+            cases.add(newQueryByIdCase(context, size, true));
+        }
+        for (int size : sizes) {
+            cases.add(newListQueryCase(context, size));
+            cases.add(newInlineBodyListQueryCase(context, size));
+        }
+        for (int size : sizes) {
+            cases.add(newStartupDatabaseCase(context, size));
+            cases.add(newStartupSnapshotCase(context, size));
+        }
+        for (int size : sizes) {
+            if (size <= MAX_SYNC_SIZE) {
+                cases.add(newEndToEndSyncCase(context, size, false));
+                cases.add(newEndToEndSyncCase(context, size, true));
+            }
+        }
+        return cases;
+    }
+
+    private static JSONArray parse(int size) throws Exception {
+        return (JSONArray) new JSONTokener(SyntheticFeed.generateString(size)).nextValue();
+    }
+
+    private static BenchmarkCase newBuildValuesCase(final int size) {
+        return new BenchmarkCase("sync.build_values", size) {
+            private JSONArray mArray;
+            private final Time mTime = new Time();
+
+            @Override
+            public void setUp() throws Exception {
+                mArray = parse(size);
+            }
+
+            @Override
+            public void run() {
+                for (int i = 0; i < mArray.length(); i++) {
+                    if (UpdaterService.buildValues(mArray.optJSONObject(i), mTime) == null) {
+                        throw new IllegalStateException("Synthetic item " + i + " was skipped");
+                    }
+                }
+            }
+
+            @Override
+            public void tearDown() {
+                mArray = null;
+            }
+        };
+    }
+
+    /* The same shape of batch as a sync: delete everything, then insert the feed */
+    private static ArrayList<ContentProviderOperation> buildSyncOperations(int size)
+            throws Exception {
+        Uri dirUri = ItemsContract.Items.buildDirUri();
+        JSONArray array = parse(size);
+        Time time = new Time();
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>(size + 1);
+        operations.add(ContentProviderOperation.newDelete(dirUri).build());
+        for (int i = 0; i < array.length(); i++) {
+            ContentValues values = UpdaterService.buildValues(array.optJSONObject(i), time);
+            operations.add(ContentProviderOperation.newInsert(dirUri).withValues(values).build());
+        }
+        return operations;
+    }
+
+    private static BenchmarkCase newApplyBatchCase(final Context context, final int size) {
+        return new BenchmarkCase("provider.apply_batch", size) {
+            private ProviderFixture mFixture;
+            private ArrayList<ContentProviderOperation> mOperations;
+
+            @Override
+            public void setUp() throws Exception {
+                mFixture = new ProviderFixture(context);
+                mOperations = buildSyncOperations(size);
+            }
+
+            @Override
+            public void run() throws Exception {
+                mFixture.getProvider().applyBatch(mOperations);
+            }
+
+            @Override
+            public void tearDown() {
+                mFixture.close();
+                mOperations = null;
+            }
+        };
+    }
+
+    private static BenchmarkCase newSelectionBuilderCase(final int size) {
+        return new BenchmarkCase("selection_builder.by_id", size) {
+            @Override
+            public void run() {
+                for (int i = 0; i < size; i++) {
+                    SelectionBuilder builder = new SelectionBuilder()
+                            .table(ItemsProvider.Tables.ITEMS)
+                            .where(ItemsContract.Items._ID + "=?", Integer.toString(i));
+                    builder.getSelection();
+                    builder.getSelectionArgs();
+                }
+            }
+        };
+    }
+
+    /*
+     * Queries single articles out of a table of the given size, the way the detail screen does.
+     * With a selection the provider can't use its cached by-id query and goes through a new
+     * SelectionBuilder instead, as every query used to.
+     */
+    private static BenchmarkCase newQueryByIdCase(final Context context, final int size,
+            final boolean withSelection) {
+        String name = withSelection ? "provider.query_by_id_selection" : "provider.query_by_id";
+        return new BenchmarkCase(name + "_x" + QUERIES_PER_RUN, size) {
+            private ProviderFixture mFixture;
+            private ItemsProvider mProvider;
+            private long[] mIds;
+            private long mAllocationsPerQuery;
+
+            @Override
+            public void setUp() throws Exception {
+                mFixture = new ProviderFixture(context);
+                mProvider = mFixture.getProvider();
+                ContentProviderResult[] results = mProvider.applyBatch(buildSyncOperations(size));
+
+                // The first result is the delete, the rest the inserted rows
+                mIds = new long[results.length - 1];
+                for (int i = 1; i < results.length; i++) {
+                    mIds[i - 1] = ContentUris.parseId(results[i].uri);
+                }
+            }
+
+            @Override
+            public void run() {
+                runQueries(QUERIES_PER_RUN);
+            }
+
+            @SuppressWarnings("deprecation")
+            @Override
+            public void tearDown() {
+                // Counted apart from the timed runs, which counting would slow down
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                runQueries(QUERIES_FOR_ALLOCATIONS);
+                Debug.stopAllocCounting();
+                mAllocationsPerQuery = Debug.getThreadAllocCount() / QUERIES_FOR_ALLOCATIONS;
+
+                mFixture.close();
+                mIds = null;
+            }
+
+            @Override
+            public JSONObject getExtras() throws JSONException {
+                return new JSONObject().put("allocations_per_query", mAllocationsPerQuery);
+            }
+
+            private void runQueries(int count) {
+                for (int i = 0; i < count; i++) {
+                    long id = mIds[i % mIds.length];
+                    Cursor cursor = withSelection
+                            ? mProvider.query(ItemsContract.Items.buildDirUri(),
+                                    ArticleLoader.Query.PROJECTION, ItemsContract.Items._ID + "=?",
+                                    new String[]{Long.toString(id)}, ItemsContract.Items.DEFAULT_SORT)
+                            : mProvider.query(ItemsContract.Items.buildItemUri(id),
+                                    ArticleLoader.Query.PROJECTION, null, null,
+                                    ItemsContract.Items.DEFAULT_SORT);
+                    if (cursor == null || !cursor.moveToFirst()) {
+                        throw new IllegalStateException("Article " + id + " not found");
+                    }
+                    cursor.close();
+                }
+            }
+        };
+    }
+
+    /* Reads the list the way the grid does, reporting the size of the database it reads from */
+    private static BenchmarkCase newListQueryCase(final Context context, final int size) {
+        return new BenchmarkCase("provider.list_query", size) {
+            private ProviderFixture mFixture;
+            private long mDatabaseBytes;
+
+            @Override
+            public void setUp() throws Exception {
+                mFixture = new ProviderFixture(context);
+                mFixture.getProvider().applyBatch(buildSyncOperations(size));
+                mDatabaseBytes = mFixture.getContext()
+                        .getDatabasePath(ItemsDatabase.DATABASE_NAME).length();
+            }
+
+            @Override
+            public void run() {
+                Cursor cursor = mFixture.getProvider().query(ItemsContract.Items.buildDirUri(),
+                        ArticleLoader.Query.PROJECTION, null, null, ItemsContract.Items.DEFAULT_SORT);
+                readAll(cursor);
+            }
+
+            @Override
+            public void tearDown() {
+                mFixture.close();
+            }
+
+            @Override
+            public JSONObject getExtras() throws JSONException {
+                return new JSONObject().put("db_bytes", mDatabaseBytes);
+            }
+        };
+    }
+
+    /*
+     * The same list query against the schema from before bodies were split out, with every body
+     * stored inline as text, as the baseline for provider.list_query
+     */
+    private static BenchmarkCase newInlineBodyListQueryCase(final Context context, final int size) {
+        return new BenchmarkCase("provider.list_query_inline_body", size) {
+            private SQLiteDatabase mDb;
+            private String mSql;
+            private long mDatabaseBytes;
+
+            @Override
+            public void setUp() throws Exception {
+                context.deleteDatabase(INLINE_BODY_DATABASE_NAME);
+                mDb = context.openOrCreateDatabase(
+                        INLINE_BODY_DATABASE_NAME, Context.MODE_PRIVATE, null);
+                mDb.execSQL("CREATE TABLE " + ItemsProvider.Tables.ITEMS + " ("
+                        + ItemsContract.Items._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                        + ItemsContract.Items.SOURCE_ID + " TEXT NOT NULL DEFAULT '',"
+                        + ItemsContract.Items.SERVER_ID + " TEXT,"
+                        + ItemsContract.Items.TITLE + " TEXT NOT NULL,"
+                        + ItemsContract.Items.AUTHOR + " TEXT NOT NULL,"
+                        + ItemsContract.Items.BODY + " TEXT NOT NULL,"
+                        + ItemsContract.Items.THUMB_URL + " TEXT NOT NULL,"
+                        + ItemsContract.Items.PHOTO_URL + " TEXT NOT NULL,"
+                        + ItemsContract.Items.ASPECT_RATIO + " REAL NOT NULL DEFAULT 1.5,"
+                        + ItemsContract.Items.PUBLISHED_DATE + " INTEGER NOT NULL DEFAULT 0,"
+                        + ItemsContract.Items.PREVIEW + " INTEGER NOT NULL DEFAULT 0"
+                        + ")");
+
+                JSONArray array = parse(size);
+                Time time = new Time();
+                mDb.beginTransaction();
+                try {
+                    for (int i = 0; i < array.length(); i++) {
+                        mDb.insertOrThrow(ItemsProvider.Tables.ITEMS, null,
+                                UpdaterService.buildValues(array.optJSONObject(i), time));
+                    }
+                    mDb.setTransactionSuccessful();
+                } finally {
+                    mDb.endTransaction();
+                }
+
+                mSql = SQLiteQueryBuilder.buildQueryString(false, ItemsProvider.Tables.ITEMS,
+                        ArticleLoader.Query.PROJECTION, null, null, null,
+                        ItemsContract.Items.DEFAULT_SORT, null);
+                mDatabaseBytes = context.getDatabasePath(INLINE_BODY_DATABASE_NAME).length();
+            }
+
+            @Override
+            public void run() {
+                readAll(mDb.rawQuery(mSql, null));
+            }
+
+            @Override
+            public void tearDown() {
+                mDb.close();
+                context.deleteDatabase(INLINE_BODY_DATABASE_NAME);
+            }
+
+            @Override
+            public JSONObject getExtras() throws JSONException {
+                return new JSONObject().put("db_bytes", mDatabaseBytes);
+            }
+        };
+    }
+
+    /*
+     * The rows a cold start draws first, read from the database: opening it, querying the list
+     * and filling the cursor window
+     */
+    private static BenchmarkCase newStartupDatabaseCase(final Context context, final int size) {
+        return new BenchmarkCase("startup.first_screen_database", size) {
+            private ProviderFixture mFixture;
+
+            @Override
+            public void setUp() throws Exception {
+                mFixture = new ProviderFixture(context);
+                mFixture.getProvider().applyBatch(buildSyncOperations(size));
+                // Every run opens the database anew, as a cold start does
+                mFixture.getProvider().shutdown();
+            }
+
+            @Override
+            public void run() {
+                ItemsProvider provider = new ItemsProvider();
+                provider.attachInfo(mFixture.getContext(), null);
+                readFirstScreen(provider.query(ItemsContract.Items.buildDirUri(),
+                        ArticleLoader.Query.PROJECTION, null, null,
+                        ItemsContract.Items.DEFAULT_SORT));
+                provider.shutdown();
+            }
+
+            @Override
+            public void tearDown() {
+                mFixture.close();
+            }
+        };
+    }
+
+    /* The same rows read from the memory-mapped list snapshot, as a cold start now does */
+    private static BenchmarkCase newStartupSnapshotCase(final Context context, final int size) {
+        return new BenchmarkCase("startup.first_screen_snapshot", size) {
+            private ProviderFixture mFixture;
+            private long mSnapshotBytes;
+
+            @Override
+            public void setUp() throws Exception {
+                mFixture = new ProviderFixture(context);
+                ItemsProvider provider = mFixture.getProvider();
+                provider.applyBatch(buildSyncOperations(size));
+                Cursor cursor = provider.query(ItemsContract.Items.buildDirUri(),
+                        ArticleLoader.Query.PROJECTION, null, null,
+                        ItemsContract.Items.DEFAULT_SORT);
+                try {
+                    ListSnapshot.write(mFixture.getContext(), cursor);
+                } finally {
+                    cursor.close();
+                }
+                mSnapshotBytes = mFixture.getContext().getFileStreamPath(ListSnapshot.FILE_NAME)
+                        .length();
+            }
+
+            @Override
+            public void run() {
+                Cursor cursor = ListSnapshot.read(mFixture.getContext());
+                if (cursor == null) {
+                    throw new IllegalStateException("Snapshot rejected");
+                }
+                readFirstScreen(cursor);
+            }
+
+            @Override
+            public void tearDown() {
+                ListSnapshot.delete(mFixture.getContext());
+                mFixture.close();
+            }
+
+            @Override
+            public JSONObject getExtras() throws JSONException {
+                return new JSONObject().put("snapshot_bytes", mSnapshotBytes);
+            }
+        };
+    }
+
+    /*
+     * A whole sync into an empty database, from a local server with the latency and bandwidth of
+     * a slow link: one monolithic feed, or numbered pages fetched in parallel and written as they
+     * arrive, one of which fails once and is retried on its own
+     */
+    private static BenchmarkCase newEndToEndSyncCase(final Context context, final int size,
+            final boolean paged) {
+        return new BenchmarkCase(paged ? "sync.end_to_end_paged" : "sync.end_to_end_monolithic",
+                size) {
+            private ProviderFixture mFixture;
+            private StubFeedServer mServer;
+            private OkHttpClient mClient;
+            private long mRequestsPerSync;
+
+            @Override
+            public void setUp() throws Exception {
+                mFixture = new ProviderFixture(context);
+
+                mServer = new StubFeedServer(SyntheticFeed.generate(size), null)
+                        .setLatencyMillis(SYNC_LATENCY_MILLIS)
+                        .setBytesPerSecond(SYNC_BYTES_PER_SECOND);
+                if (paged) {
+                    mServer.setPages(splitIntoPages(parse(size), SYNC_PAGE_SIZE));
+                }
+                mClient = new OkHttpClient();
+            }
+
+            @Override
+            public void run() throws Exception {
+                ArrayList<ContentProviderOperation> clear =
+                        new ArrayList<ContentProviderOperation>(1);
+                clear.add(ContentProviderOperation.newDelete(ItemsContract.Items.buildDirUri())
+                        .build());
+                mFixture.getProvider().applyBatch(clear);
+                if (paged) {
+                    mServer.failPageOnce(2);
+                }
+
+                long requestsBefore = mServer.getRequestCount();
+                Feed feed = RemoteEndpointUtil.fetchFeed(mClient, mServer.getUrl(), null);
+                if (feed == null) {
+                    throw new IllegalStateException("Feed didn't parse");
+                }
+
+                // Written the way UpdaterService writes a source, a batch per page; the sync status
+                // is left alone
+                FeedSource source = new FeedSource(BENCHMARK_SOURCE_ID, mServer.getUrl());
+                UpdaterService.SourceSync sync = new UpdaterService.SourceSync(
+                        mFixture.getContext(), source, null, false);
+                sync.write(feed, new HashMap<String, Long>(), new HashMap<String, Long>());
+                if (sync.mWritten != size) {
+                    throw new IllegalStateException("Synced " + sync.mWritten + " of " + size);
+                }
+                mRequestsPerSync = mServer.getRequestCount() - requestsBefore;
+            }
+
+            @Override
+            public void tearDown() throws Exception {
+                mServer.close();
+                mFixture.close();
+            }
+
+            @Override
+            public JSONObject getExtras() throws JSONException {
+                return new JSONObject()
+                        .put("requests_per_sync", mRequestsPerSync)
+                        .put("latency_ms", SYNC_LATENCY_MILLIS)
+                        .put("bytes_per_second", SYNC_BYTES_PER_SECOND);
+            }
+        };
+    }
+
+    /* Numbered pages of the feed, in the paginated format */
+    private static List<byte[]> splitIntoPages(JSONArray array, int pageSize) throws Exception {
+        int pageCount = (array.length() + pageSize - 1) / pageSize;
+        List<byte[]> pages = new ArrayList<byte[]>(pageCount);
+        for (int p = 0; p < pageCount; p++) {
+            JSONArray items = new JSONArray();
+            for (int i = p * pageSize; i < Math.min(array.length(), (p + 1) * pageSize); i++) {
+                items.put(array.get(i));
+            }
+            pages.add(new JSONObject()
+                    .put("items", items)
+                    .put("page_count", pageCount)
+                    .toString().getBytes("UTF-8"));
+        }
+        return pages;
+    }
+
+    /* Reads what the grid binds for its first screen of cards */
+    private static void readFirstScreen(Cursor cursor) {
+        try {
+            for (int i = 0; i < FIRST_SCREEN_ROWS && cursor.moveToNext(); i++) {
+                cursor.getLong(ArticleLoader.Query._ID);
+                cursor.getString(ArticleLoader.Query.TITLE);
+                cursor.getString(ArticleLoader.Query.AUTHOR);
+                cursor.getLong(ArticleLoader.Query.PUBLISHED_DATE);
+                cursor.getString(ArticleLoader.Query.THUMB_URL);
+                cursor.getFloat(ArticleLoader.Query.ASPECT_RATIO);
+                cursor.getLong(ArticleLoader.Query.PREVIEW);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void readAll(Cursor cursor) {
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getString(ArticleLoader.Query.TITLE);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
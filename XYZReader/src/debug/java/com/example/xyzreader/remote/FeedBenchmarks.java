@@ -0,0 +1,118 @@
+package com.example.xyzreader.remote;
+
+import com.example.xyzreader.benchmark.BenchmarkCase;
+import com.example.xyzreader.benchmark.SyntheticFeed;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Benchmarks for the feed parsing in {@link RemoteEndpointUtil}, and for syncing from a
+ * {@link StubFeedServer} with and without delta support.
+ */
+public class FeedBenchmarks {
+    /* How many articles a delta adds or changes, and how many it deletes */
+    private static final int DELTA_CHANGES = 10;
+    private static final int DELTA_DELETES = 2;
+    private static final String SINCE_TOKEN = "1";
+
+    private FeedBenchmarks() {
+    }
+
+    public static List<BenchmarkCase> create(int[] sizes) {
+        List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+        for (final int size : sizes) {
+            cases.add(new BenchmarkCase("feed.parse_json", size) {
+                private byte[] mFeed;
+
+                @Override
+                public void setUp() {
+                    mFeed = SyntheticFeed.generate(size);
+                }
+
+                @Override
+                public void run() {
+                    if (RemoteEndpointUtil.parseJsonArray(mFeed) == null) {
+                        throw new IllegalStateException("Synthetic feed didn't parse");
+                    }
+                }
+
+                @Override
+                public void tearDown() {
+                    mFeed = null;
+                }
+            });
+        }
+        for (int size : sizes) {
+            cases.add(newFetchCase(size, false));
+            cases.add(newFetchCase(size, true));
+        }
+        return cases;
+    }
+
+    /*
+     * A sync that already has articles asks for what changed since its token. A server without
+     * delta support answers with the full feed, which the client must recognise and take as such.
+     */
+    private static BenchmarkCase newFetchCase(final int size, final boolean serverSupportsDelta) {
+        return new BenchmarkCase(serverSupportsDelta ? "feed.fetch_delta" : "feed.fetch_full",
+                size) {
+            private StubFeedServer mServer;
+            private OkHttpClient mClient;
+            private long mBytesPerFetch;
+
+            @Override
+            public void setUp() throws Exception {
+                mServer = new StubFeedServer(SyntheticFeed.generate(size),
+                        serverSupportsDelta ? generateDelta(size) : null);
+                mClient = new OkHttpClient();
+            }
+
+            @Override
+            public void run() throws Exception {
+                long bytesBefore = mServer.getBytesServed();
+                Feed feed = RemoteEndpointUtil.fetchFeed(mClient, mServer.getUrl(), SINCE_TOKEN);
+                if (feed == null || feed.isDelta() != serverSupportsDelta) {
+                    throw new IllegalStateException("Expected a "
+                            + (serverSupportsDelta ? "delta" : "full feed"));
+                }
+                if (feed.isDelta() ? feed.getDeletedIds().size() != Math.min(DELTA_DELETES, size)
+                        : feed.getItems().length() != size) {
+                    throw new IllegalStateException("Unexpected feed contents");
+                }
+                mBytesPerFetch = mServer.getBytesServed() - bytesBefore;
+            }
+
+            @Override
+            public void tearDown() throws Exception {
+                mServer.close();
+                mServer = null;
+            }
+
+            @Override
+            public JSONObject getExtras() throws JSONException {
+                return new JSONObject().put("bytes_per_fetch", mBytesPerFetch);
+            }
+        };
+    }
+
+    /* A few changed articles and a couple of deletions out of a feed of the given size */
+    private static byte[] generateDelta(int size) throws Exception {
+        JSONArray deleted = new JSONArray();
+        for (int i = 0; i < Math.min(DELTA_DELETES, size); i++) {
+            deleted.put(Integer.toString(i));
+        }
+        JSONObject delta = new JSONObject()
+                .put(Feed.KEY_SINCE, "2")
+                .put(Feed.KEY_ITEMS, new JSONArray(
+                        SyntheticFeed.generateString(Math.min(DELTA_CHANGES, size))))
+                .put(Feed.KEY_DELETED, deleted);
+        return delta.toString().getBytes("UTF-8");
+    }
+}
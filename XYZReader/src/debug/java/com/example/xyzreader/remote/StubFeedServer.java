@@ -0,0 +1,192 @@
+package com.example.xyzreader.remote;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal HTTP/1.1 server on the loopback interface standing in for the feed endpoint. It
+ * serves the full feed, unless it supports deltas and the request carries a {@code since} token,
+ * or it paginates, in which case it serves the page asked for, the first one by default.
+ * Connections are kept alive and each is served on its own thread, so parallel requests behave
+ * as they would against a real server.
+ * <p>
+ * To look like a slow link, every response can be held back by a fixed latency and written at a
+ * limited rate, and a page can be made to fail once.
+ */
+public class StubFeedServer implements Closeable {
+    private static final String TAG = "StubFeedServer";
+
+    private static final Pattern PAGE_PATTERN =
+            Pattern.compile("[?&]" + Feed.PARAM_PAGE + "=(\\d+)");
+    private static final int WRITE_CHUNK_SIZE = 8 * 1024;
+
+    private final ServerSocket mSocket;
+    private final byte[] mFullFeed;
+    private final byte[] mDelta;
+    private final AtomicLong mBytesServed = new AtomicLong();
+    private final AtomicLong mRequestCount = new AtomicLong();
+
+    private volatile List<byte[]> mPages;
+    private volatile long mLatencyMillis;
+    private volatile int mBytesPerSecond;
+    private volatile int mFailingPage;
+
+    /** Pass a null delta for a server that doesn't know about them and ignores the token. */
+    public StubFeedServer(byte[] fullFeed, byte[] delta) throws IOException {
+        mFullFeed = fullFeed;
+        mDelta = delta;
+        mSocket = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Serves these pages, numbered from 1, instead of the full feed. */
+    public StubFeedServer setPages(List<byte[]> pages) {
+        mPages = pages;
+        return this;
+    }
+
+    /** Holds back every response by this long. */
+    public StubFeedServer setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+        return this;
+    }
+
+    /** Limits how fast each response is written, or 0 for no limit. */
+    public StubFeedServer setBytesPerSecond(int bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /** Answers the next request for this page with a 503, as a transient failure. */
+    public StubFeedServer failPageOnce(int page) {
+        mFailingPage = page;
+        return this;
+    }
+
+    public URL getUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + mSocket.getLocalPort() + "/data.json");
+    }
+
+    /** Response body bytes sent so far. */
+    public long getBytesServed() {
+        return mBytesServed.get();
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    private void accept() {
+        while (!mSocket.isClosed()) {
+            try {
+                final Socket connection = mSocket.accept();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(connection);
+                    }
+                }, TAG);
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!mSocket.isClosed()) {
+                    Log.w(TAG, "Error accepting a connection", e);
+                }
+            }
+        }
+    }
+
+    /* Answers requests on a connection until the client closes it */
+    private void serve(Socket connection) {
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), "US-ASCII"));
+            OutputStream out = connection.getOutputStream();
+            for (String requestLine = in.readLine(); requestLine != null;
+                    requestLine = in.readLine()) {
+                // Skip the headers, nothing in them changes the answer
+                String header = in.readLine();
+                while (header != null && !header.isEmpty()) {
+                    header = in.readLine();
+                }
+                mRequestCount.incrementAndGet();
+                respond(requestLine, out);
+            }
+        } catch (IOException e) {
+            if (!mSocket.isClosed()) {
+                Log.w(TAG, "Error serving feed", e);
+            }
+        } finally {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void respond(String requestLine, OutputStream out) throws IOException {
+        SystemClock.sleep(mLatencyMillis);
+
+        int status = 200;
+        byte[] body;
+        Matcher page = PAGE_PATTERN.matcher(requestLine);
+        List<byte[]> pages = mPages;
+        if (mDelta != null && requestLine.contains(Feed.PARAM_SINCE + "=")) {
+            body = mDelta;
+        } else if (pages != null) {
+            int number = page.find() ? Integer.parseInt(page.group(1)) : 1;
+            if (number == mFailingPage) {
+                mFailingPage = 0;
+                status = 503;
+                body = new byte[0];
+            } else if (number >= 1 && number <= pages.size()) {
+                body = pages.get(number - 1);
+            } else {
+                status = 404;
+                body = new byte[0];
+            }
+        } else {
+            body = mFullFeed;
+        }
+
+        out.write(("HTTP/1.1 " + status + (status == 200 ? " OK" : " Error") + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + body.length + "\r\n\r\n").getBytes("US-ASCII"));
+        for (int offset = 0; offset < body.length; offset += WRITE_CHUNK_SIZE) {
+            int count = Math.min(WRITE_CHUNK_SIZE, body.length - offset);
+            out.write(body, offset, count);
+            if (mBytesPerSecond > 0) {
+                SystemClock.sleep(count * 1000L / mBytesPerSecond);
+            }
+        }
+        out.flush();
+        mBytesServed.addAndGet(body.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSocket.close();
+    }
+}
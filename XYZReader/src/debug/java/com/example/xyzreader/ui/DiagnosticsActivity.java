@@ -0,0 +1,155 @@
+package com.example.xyzreader.ui;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v4.app.ShareCompat;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.Toolbar;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import com.example.xyzreader.BuildConfig;
+import com.example.xyzreader.MemoryBudget;
+import com.example.xyzreader.R;
+import com.example.xyzreader.data.DatabaseMaintenance;
+import com.example.xyzreader.data.SyncStatus;
+import com.example.xyzreader.metrics.Metrics;
+import com.example.xyzreader.remote.NetworkHelper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Debug screen showing the {@link Metrics} collected in this process along with the network, sync,
+ * database and memory state, as JSON. The report can be exported to compare one build against
+ * another.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+    private static final String TAG = "DiagnosticsActivity";
+
+    private TextView mReportView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
+        toolbar.setTitle(R.string.diagnostics_title);
+        setSupportActionBar(toolbar);
+
+        mReportView = (TextView) findViewById(R.id.diagnostics_report);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mReportView.setText(buildReport(this));
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.diagnostics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_export:
+                exportReport();
+                return true;
+            case R.id.action_reset:
+                Metrics.reset();
+                mReportView.setText(buildReport(this));
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    /* Writes the report next to the app's external files, so it can be pulled with adb, and
+     * offers to share it */
+    private void exportReport() {
+        String report = buildReport(this);
+
+        File dir = getExternalFilesDir(null);
+        if (dir != null) {
+            writeReport(new File(dir, "diagnostics-" + System.currentTimeMillis() + ".json"), report);
+        }
+
+        startActivity(Intent.createChooser(ShareCompat.IntentBuilder.from(this)
+                .setType("application/json")
+                .setText(report)
+                .getIntent(), getString(R.string.action_export)));
+    }
+
+    private static void writeReport(File file, String report) {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.write(report.getBytes("UTF-8"));
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing diagnostics report", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    static String buildReport(Context context) {
+        try {
+            NetworkHelper network = NetworkHelper.getInstance(context);
+            SyncStatus sync = new SyncStatus(context);
+            DatabaseMaintenance maintenance = new DatabaseMaintenance(context);
+            Bundle database = maintenance.getDatabaseStats();
+
+            JSONObject report = Metrics.toJson()
+                    .put("build", new JSONObject()
+                            .put("version_name", BuildConfig.VERSION_NAME)
+                            .put("version_code", BuildConfig.VERSION_CODE))
+                    .put("network", new JSONObject()
+                            .put("requests", network.getNetworkRequestCount())
+                            .put("reused_connections", network.getReusedConnectionCount())
+                            .put("wire_bytes", network.getWireBytes())
+                            .put("pooled_connections", network.getPooledConnectionCount())
+                            .put("idle_connections", network.getIdleConnectionCount()))
+                    .put("sync", new JSONObject()
+                            .put("last_sync_time", sync.getLastSyncTime())
+                            .put("last_success_time", sync.getLastSuccessTime())
+                            .put("last_inserted", sync.getLastInsertedCount())
+                            .put("last_skipped", sync.getLastSkippedCount())
+                            .put("last_retries", sync.getLastRetryCount())
+                            .put("consecutive_failures", sync.getConsecutiveFailures())
+                            .put("circuit_open", sync.isCircuitOpen()))
+                    .put("database", new JSONObject()
+                            .put("rows", database.getLong(DatabaseMaintenance.STAT_ROWS))
+                            .put("bytes", database.getLong(DatabaseMaintenance.STAT_BYTES))
+                            .put("free_bytes",
+                                    database.getLong(DatabaseMaintenance.STAT_FREE_BYTES))
+                            .put("last_maintenance_time", maintenance.getLastRunTime())
+                            .put("last_pruned_by_age", maintenance.getLastPrunedByAge())
+                            .put("last_pruned_by_count", maintenance.getLastPrunedByCount())
+                            .put("last_pruned_by_size", maintenance.getLastPrunedBySize())
+                            .put("last_images_evicted", maintenance.getLastImagesEvicted())
+                            .put("last_bytes_before", maintenance.getLastBytesBefore())
+                            .put("last_bytes_after", maintenance.getLastBytesAfter()))
+                    .put("memory", MemoryBudget.getInstance(context).toJson());
+            return report.toString(2);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error building diagnostics report", e);
+            return e.toString();
+        }
+    }
+}
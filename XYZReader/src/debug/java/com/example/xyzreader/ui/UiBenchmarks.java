@@ -0,0 +1,477 @@
+package com.example.xyzreader.ui;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.StaggeredGridLayoutManager;
+import android.text.Html;
+import android.text.TextPaint;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.example.xyzreader.R;
+import com.example.xyzreader.benchmark.BenchmarkCase;
+import com.example.xyzreader.benchmark.SyntheticFeed;
+import com.example.xyzreader.metrics.Metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks for the UI layer: creating the views of detail pages, rendering article bodies with
+ * {@link Html#fromHtml(String)} and laying them out, drawing a {@link DividerItemDecoration} over a laid out list, the first scroll
+ * through the article grid, decoding a thumbnail from its original or from its stored variant,
+ * and binding a thumbnail preview.
+ */
+public class UiBenchmarks {
+    private static final int LIST_WIDTH = 1080;
+    private static final int LIST_ITEM_HEIGHT = 48;
+    private static final int DRAWS_PER_RUN = 100;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int SCROLL_ITEM_COUNT = 200;
+    private static final int SCROLL_STEP = 120;
+    private static final int ORIGINAL_WIDTH = 1600;
+    private static final int ORIGINAL_HEIGHT = 1200;
+    private static final int ORIGINAL_QUALITY = 90;
+    private static final int PREVIEW_BINDS_PER_RUN = 1000;
+    private static final float BODY_LINE_SPACING = 1.25f;
+    /* Paging through a long session's worth of articles */
+    private static final int DETAIL_PAGES = 20;
+    /* Packed RGB 565 quadrant colors, as ThumbnailPreview stores them */
+    private static final long[] PREVIEWS = {
+            0xf800_07e0_001f_ffffL, 0x8410_4208_c618_2104L, 0x1234_5678_9abc_def0L};
+
+    private UiBenchmarks() {
+    }
+
+    public static List<BenchmarkCase> create(Context context, int[] sizes, int[] childCounts) {
+        List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+        // Before anything else sets the body typeface, so its one load is counted here
+        cases.add(newDetailPagesCase(context));
+        for (int size : sizes) {
+            cases.add(newFromHtmlCase(size));
+        }
+        for (int size : sizes) {
+            cases.add(newBodyLayoutCase(context, size));
+        }
+        for (int childCount : childCounts) {
+            cases.add(newDividerDrawCase(context, childCount));
+        }
+        cases.add(newInitialScrollCase(context, false));
+        cases.add(newInitialScrollCase(context, true));
+        cases.add(newThumbnailDecodeCase(context, false));
+        cases.add(newThumbnailDecodeCase(context, true));
+        cases.add(newPreviewBindCase(context));
+        return cases;
+    }
+
+    /*
+     * Creates the views of detail pages the way paging through articles does, and fails if the
+     * body typeface is loaded more than once for all of them
+     */
+    private static BenchmarkCase newDetailPagesCase(final Context context) {
+        return new BenchmarkCase("detail.create_pages", DETAIL_PAGES) {
+            private LayoutInflater mInflater;
+            private long mLoadsBefore;
+            private long mLoads;
+
+            @Override
+            public boolean runsOnMainThread() {
+                return true;
+            }
+
+            @Override
+            public void setUp() {
+                mInflater = LayoutInflater.from(
+                        new ContextThemeWrapper(context, R.style.AppTheme_Detail));
+                mLoadsBefore = Metrics.getCount(Metrics.TYPEFACE_LOADS);
+            }
+
+            @Override
+            public void run() {
+                for (int i = 0; i < DETAIL_PAGES; i++) {
+                    ArticleDetailFragment.inflateRootView(mInflater, null);
+                }
+                // One if nothing in the process had loaded the font yet, none otherwise
+                mLoads = Metrics.getCount(Metrics.TYPEFACE_LOADS) - mLoadsBefore;
+                if (mLoads > 1) {
+                    throw new IllegalStateException("Loaded the body typeface " + mLoads
+                            + " times for " + DETAIL_PAGES + " pages");
+                }
+            }
+
+            @Override
+            public JSONObject getExtras() throws JSONException {
+                return new JSONObject().put("typeface_loads", mLoads);
+            }
+        };
+    }
+
+    private static BenchmarkCase newFromHtmlCase(final int size) {
+        return new BenchmarkCase("detail.html_from_html", size) {
+            private String[] mBodies;
+
+            @Override
+            public void setUp() {
+                Random random = new Random(size);
+                mBodies = new String[size];
+                for (int i = 0; i < size; i++) {
+                    mBodies[i] = SyntheticFeed.body(random);
+                }
+            }
+
+            @Override
+            public void run() {
+                for (String body : mBodies) {
+                    Html.fromHtml(body);
+                }
+            }
+
+            @Override
+            public void tearDown() {
+                mBodies = null;
+            }
+        };
+    }
+
+    /* Parses and lays out bodies the way BodyLayoutCache does on a miss, in the body typeface */
+    private static BenchmarkCase newBodyLayoutCase(final Context context, final int size) {
+        return new BenchmarkCase("detail.body_layout", size) {
+            private String[] mBodies;
+            private TextPaint mPaint;
+
+            @Override
+            public void setUp() {
+                Random random = new Random(size);
+                mBodies = new String[size];
+                for (int i = 0; i < size; i++) {
+                    mBodies[i] = SyntheticFeed.body(random);
+                }
+                mPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+                mPaint.setTypeface(Typefaces.get(context, Typefaces.ROSARIO_REGULAR));
+                mPaint.setTextSize(
+                        context.getResources().getDimension(R.dimen.detail_body_text_size));
+            }
+
+            @Override
+            public void run() {
+                for (String body : mBodies) {
+                    BodyLayoutCache.build(body, LIST_WIDTH, mPaint, BODY_LINE_SPACING, 0);
+                }
+            }
+
+            @Override
+            public void tearDown() {
+                mBodies = null;
+            }
+        };
+    }
+
+    private static BenchmarkCase newDividerDrawCase(final Context context, final int childCount) {
+        return new BenchmarkCase("list.divider_draw_x" + DRAWS_PER_RUN, childCount) {
+            private RecyclerView mRecyclerView;
+            private DividerItemDecoration mDecoration;
+            private final RecyclerView.State mState = new RecyclerView.State();
+            private final Picture mPicture = new Picture();
+
+            @Override
+            public boolean runsOnMainThread() {
+                return true;
+            }
+
+            @Override
+            public void setUp() {
+                mRecyclerView = new RecyclerView(context);
+                mRecyclerView.setLayoutManager(new LinearLayoutManager(context));
+                mRecyclerView.setAdapter(new FixedHeightAdapter(childCount));
+                Drawable divider = ContextCompat.getDrawable(context, R.drawable.padded_divider);
+                mDecoration = new DividerItemDecoration(context, divider,
+                        DividerItemDecoration.VERTICAL_LIST);
+                mRecyclerView.addItemDecoration(mDecoration);
+
+                int height = childCount * (LIST_ITEM_HEIGHT + divider.getIntrinsicHeight());
+                mRecyclerView.measure(
+                        View.MeasureSpec.makeMeasureSpec(LIST_WIDTH, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+                mRecyclerView.layout(0, 0, LIST_WIDTH, height);
+                if (mRecyclerView.getChildCount() != childCount) {
+                    throw new IllegalStateException("Laid out " + mRecyclerView.getChildCount()
+                            + " children instead of " + childCount);
+                }
+            }
+
+            @Override
+            public void run() {
+                Canvas canvas = mPicture.beginRecording(LIST_WIDTH, mRecyclerView.getHeight());
+                for (int i = 0; i < DRAWS_PER_RUN; i++) {
+                    mDecoration.onDraw(canvas, mRecyclerView, mState);
+                }
+                mPicture.endRecording();
+            }
+
+            @Override
+            public void tearDown() {
+                mRecyclerView = null;
+                mDecoration = null;
+            }
+        };
+    }
+
+    /*
+     * Scrolls a new article grid from top to bottom, the way the list does on its first scroll.
+     * With a shared pool the grid starts with the views the previous one left behind, as it does
+     * once the activity keeps one pool for its lifetime; otherwise every grid inflates its own.
+     */
+    private static BenchmarkCase newInitialScrollCase(final Context context, final boolean sharedPool) {
+        String name = sharedPool ? "list.initial_scroll_shared_pool" : "list.initial_scroll_new_pool";
+        return new BenchmarkCase(name, SCROLL_ITEM_COUNT) {
+            private RecyclerView.RecycledViewPool mSharedPool;
+            private ArticleItemAdapter mAdapter;
+
+            @Override
+            public boolean runsOnMainThread() {
+                return true;
+            }
+
+            @Override
+            public void setUp() {
+                if (sharedPool) {
+                    mSharedPool = newViewPool(context);
+                }
+            }
+
+            @Override
+            public void run() {
+                int columnCount = context.getResources().getInteger(R.integer.list_column_count);
+                RecyclerView recyclerView = new RecyclerView(context);
+                recyclerView.setRecycledViewPool(sharedPool ? mSharedPool : newViewPool(context));
+                recyclerView.setLayoutManager(new StaggeredGridLayoutManager(
+                        columnCount, StaggeredGridLayoutManager.VERTICAL));
+                mAdapter = new ArticleItemAdapter(context, SCROLL_ITEM_COUNT);
+                recyclerView.setAdapter(mAdapter);
+
+                recyclerView.measure(
+                        View.MeasureSpec.makeMeasureSpec(LIST_WIDTH, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(SCREEN_HEIGHT, View.MeasureSpec.EXACTLY));
+                recyclerView.layout(0, 0, LIST_WIDTH, SCREEN_HEIGHT);
+                for (int i = 0; i < SCROLL_ITEM_COUNT * 10 && recyclerView.canScrollVertically(1); i++) {
+                    recyclerView.scrollBy(0, SCROLL_STEP);
+                }
+
+                // Hands the views back to the pool, as the list does when it goes away
+                recyclerView.swapAdapter(null, true);
+            }
+
+            @Override
+            public void tearDown() {
+                mSharedPool = null;
+            }
+
+            @Override
+            public JSONObject getExtras() throws JSONException {
+                // From the last run, after the warmup has left the shared pool full
+                return new JSONObject()
+                        .put("holders_created", mAdapter.mCreated)
+                        .put("inflate_us", mAdapter.mInflateNanos / 1000);
+            }
+        };
+    }
+
+    /*
+     * Decodes one thumbnail at the column width, either from a camera-sized JPEG the way Volley
+     * does, subsampling and then scaling, or from the WebP variant ThumbnailLoader stores
+     */
+    private static BenchmarkCase newThumbnailDecodeCase(final Context context,
+            final boolean variant) {
+        String name = variant ? "image.decode_variant" : "image.decode_original";
+        return new BenchmarkCase(name, 1) {
+            private int mWidth;
+            private byte[] mOriginal;
+            private byte[] mVariant;
+
+            @Override
+            public void setUp() {
+                mWidth = ArticleListLoader.getThumbnailWidth(context.getResources());
+                Bitmap original = newSyntheticPhoto();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                original.compress(Bitmap.CompressFormat.JPEG, ORIGINAL_QUALITY, out);
+                mOriginal = out.toByteArray();
+                Bitmap scaled = Bitmap.createScaledBitmap(original, mWidth,
+                        mWidth * ORIGINAL_HEIGHT / ORIGINAL_WIDTH, true);
+                mVariant = ThumbnailLoader.encodeVariant(scaled);
+                original.recycle();
+                scaled.recycle();
+            }
+
+            @Override
+            public void run() {
+                Bitmap bitmap;
+                if (variant) {
+                    bitmap = BitmapFactory.decodeByteArray(mVariant, 0, mVariant.length);
+                } else {
+                    BitmapFactory.Options options = new BitmapFactory.Options();
+                    options.inSampleSize = 1;
+                    while (ORIGINAL_WIDTH / (options.inSampleSize * 2) >= mWidth) {
+                        options.inSampleSize *= 2;
+                    }
+                    Bitmap sampled = BitmapFactory.decodeByteArray(mOriginal, 0, mOriginal.length,
+                            options);
+                    bitmap = Bitmap.createScaledBitmap(sampled, mWidth,
+                            mWidth * ORIGINAL_HEIGHT / ORIGINAL_WIDTH, true);
+                    if (bitmap != sampled) {
+                        sampled.recycle();
+                    }
+                }
+                bitmap.recycle();
+            }
+
+            @Override
+            public JSONObject getExtras() throws JSONException {
+                return new JSONObject()
+                        .put("original_bytes", mOriginal.length)
+                        .put("variant_bytes", mVariant.length);
+            }
+        };
+    }
+
+    /* Sets and draws a card's preview the way each bind does, cycling through previews */
+    private static BenchmarkCase newPreviewBindCase(final Context context) {
+        return new BenchmarkCase("list.preview_bind_x" + PREVIEW_BINDS_PER_RUN, 1) {
+            private final Picture mPicture = new Picture();
+            private PreviewDrawable mDrawable;
+            private int mHeight;
+
+            @Override
+            public boolean runsOnMainThread() {
+                return true;
+            }
+
+            @Override
+            public void setUp() {
+                int width = ArticleListLoader.getThumbnailWidth(context.getResources());
+                mHeight = ArticleListLoader.getThumbnailHeight(width, 1.5f);
+                mDrawable = new PreviewDrawable(Color.LTGRAY);
+                mDrawable.setBounds(0, 0, width, mHeight);
+            }
+
+            @Override
+            public void run() {
+                Canvas canvas = mPicture.beginRecording(mDrawable.getBounds().width(), mHeight);
+                for (int i = 0; i < PREVIEW_BINDS_PER_RUN; i++) {
+                    mDrawable.setPreview(PREVIEWS[i % PREVIEWS.length]);
+                    mDrawable.draw(canvas);
+                }
+                mPicture.endRecording();
+            }
+
+            @Override
+            public void tearDown() {
+                mDrawable = null;
+            }
+        };
+    }
+
+    /* Gradients and shapes, so the JPEG compresses about as well as a photo would */
+    private static Bitmap newSyntheticPhoto() {
+        Bitmap bitmap = Bitmap.createBitmap(ORIGINAL_WIDTH, ORIGINAL_HEIGHT,
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        Random random = new Random(ORIGINAL_WIDTH);
+        canvas.drawColor(Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+        for (int i = 0; i < 200; i++) {
+            paint.setColor(Color.argb(128 + random.nextInt(128), random.nextInt(256),
+                    random.nextInt(256), random.nextInt(256)));
+            canvas.drawCircle(random.nextInt(ORIGINAL_WIDTH), random.nextInt(ORIGINAL_HEIGHT),
+                    20 + random.nextInt(200), paint);
+        }
+        return bitmap;
+    }
+
+    private static RecyclerView.RecycledViewPool newViewPool(Context context) {
+        RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        pool.setMaxRecycledViews(0, ArticleListActivity.getViewPoolSize(context.getResources()));
+        return pool;
+    }
+
+    /* Binds synthetic text into the real list item layout, counting and timing inflation */
+    private static class ArticleItemAdapter extends RecyclerView.Adapter<ArticleListActivity.ViewHolder> {
+        private final LayoutInflater mInflater;
+        private final int mCount;
+        private final int mThumbnailWidth;
+        int mCreated;
+        long mInflateNanos;
+
+        ArticleItemAdapter(Context context, int count) {
+            mInflater = LayoutInflater.from(context);
+            mCount = count;
+            mThumbnailWidth = ArticleListLoader.getThumbnailWidth(context.getResources());
+        }
+
+        @Override
+        public ArticleListActivity.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            long start = System.nanoTime();
+            View view = mInflater.inflate(R.layout.list_item_article, parent, false);
+            mInflateNanos += System.nanoTime() - start;
+            mCreated++;
+            return new ArticleListActivity.ViewHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(ArticleListActivity.ViewHolder holder, int position) {
+            holder.titleView.setText("Article " + position);
+            holder.subtitleView.setText("by Author " + (position % 7));
+            // Same spread of aspect ratios as SyntheticFeed
+            float aspectRatio = 0.75f + (position % 10) * 0.1f;
+            holder.thumbnailView.setFixedHeight(
+                    ArticleListLoader.getThumbnailHeight(mThumbnailWidth, aspectRatio));
+            holder.previewDrawable.setPreview(PREVIEWS[position % PREVIEWS.length]);
+        }
+
+        @Override
+        public int getItemCount() {
+            return mCount;
+        }
+    }
+
+    private static class FixedHeightAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        private final int mCount;
+
+        FixedHeightAdapter(int count) {
+            mCount = count;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View view = new View(parent.getContext());
+            view.setLayoutParams(new RecyclerView.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, LIST_ITEM_HEIGHT));
+            return new RecyclerView.ViewHolder(view) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.xyzreader;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import com.example.xyzreader.metrics.Metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process-wide budget for the app's in-memory caches. The budget is a fixed part of the heap the
+ * device gives the app, see {@link ActivityManager#getMemoryClass()}, and each cache registers
+ * with its share of it. When the system asks the app to trim its memory, every cache is shrunk to
+ * the same fraction of its budget, a smaller one the more pressing the level. Caches grow back by
+ * themselves as they're used again.
+ */
+public class MemoryBudget implements ComponentCallbacks2 {
+    private static final String TAG = "MemoryBudget";
+
+    /* The part of the heap the caches may use between them */
+    private static final float CACHE_FRACTION = 0.25f;
+
+    /** A cache whose memory the budget manages. Both calls may come from any thread. */
+    public interface Cache {
+        long getSizeBytes();
+
+        /** Evicts entries until the cache holds no more than this many bytes. */
+        void trimToSize(long maxBytes);
+    }
+
+    private static MemoryBudget sInstance;
+
+    public static synchronized MemoryBudget getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MemoryBudget(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+    private final int mMemoryClass;
+    private final long mTotalBytes;
+    private final Map<String, Registration> mCaches = new TreeMap<String, Registration>();
+    private int mLastTrimLevel;
+    private long mLastTrimTime;
+
+    /* A registered cache and the bytes it may use when memory isn't short */
+    private static class Registration {
+        final Cache mCache;
+        final long mBudgetBytes;
+
+        Registration(Cache cache, long budgetBytes) {
+            mCache = cache;
+            mBudgetBytes = budgetBytes;
+        }
+    }
+
+    private MemoryBudget(Context applicationContext) {
+        ActivityManager activityManager =
+                (ActivityManager) applicationContext.getSystemService(Context.ACTIVITY_SERVICE);
+        mMemoryClass = activityManager.getMemoryClass();
+        mTotalBytes = (long) (mMemoryClass * 1024L * 1024L * CACHE_FRACTION);
+        applicationContext.registerComponentCallbacks(this);
+    }
+
+    /** The bytes a cache with this share of the budget may use, to size it with. */
+    public long getBudgetBytes(float share) {
+        return (long) (mTotalBytes * share);
+    }
+
+    /**
+     * Puts a cache under the budget, replacing any cache registered under the same name. The
+     * shares of all the caches should add up to no more than 1.
+     */
+    public synchronized void register(String name, float share, Cache cache) {
+        mCaches.put(name, new Registration(cache, getBudgetBytes(share)));
+    }
+
+    public synchronized void unregister(String name) {
+        mCaches.remove(name);
+    }
+
+    /** The fraction of its budget each cache keeps after a trim at this level. */
+    static float getRetainedFraction(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            // Next in line to be killed, whatever is freed may keep the process alive
+            return 0;
+        } else if (level >= TRIM_MEMORY_MODERATE) {
+            return 0.25f;
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            // Nothing on screen needs the caches, keep enough to come back to quickly
+            return 0.5f;
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0.25f;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return 0.5f;
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return 0.75f;
+        }
+        return 1;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        trim(level, getRetainedFraction(level));
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(TRIM_MEMORY_COMPLETE, 0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private synchronized void trim(int level, float fraction) {
+        long freed = 0;
+        for (Registration registration : mCaches.values()) {
+            long before = registration.mCache.getSizeBytes();
+            registration.mCache.trimToSize((long) (registration.mBudgetBytes * fraction));
+            freed += Math.max(0, before - registration.mCache.getSizeBytes());
+        }
+        mLastTrimLevel = level;
+        mLastTrimTime = System.currentTimeMillis();
+        Metrics.increment(Metrics.MEMORY_TRIMS);
+        Metrics.increment(Metrics.MEMORY_TRIMMED_BYTES, freed);
+        Log.i(TAG, "Trimmed " + freed + " bytes of caches at level " + level);
+    }
+
+    /** The budget, the last trim and what each cache uses, for debugging. */
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject caches = new JSONObject();
+        for (Map.Entry<String, Registration> entry : mCaches.entrySet()) {
+            caches.put(entry.getKey(), new JSONObject()
+                    .put("size_bytes", entry.getValue().mCache.getSizeBytes())
+                    .put("budget_bytes", entry.getValue().mBudgetBytes));
+        }
+        return new JSONObject()
+                .put("memory_class_mb", mMemoryClass)
+                .put("budget_bytes", mTotalBytes)
+                .put("last_trim_level", mLastTrimLevel)
+                .put("last_trim_time", mLastTrimTime)
+                .put("caches", caches);
+    }
+}
@@ -16,8 +16,18 @@ public class ArticleLoader extends CursorLoader {
         return new ArticleLoader(context, ItemsContract.Items.buildItemUri(itemId));
     }
 
-    private ArticleLoader(Context context, Uri uri) {
-        super(context, uri, Query.PROJECTION, null, null, ItemsContract.Items.DEFAULT_SORT);
+    /** Loads the body of an article, which the other two leave out. */
+    public static ArticleLoader newBodyInstanceForItemId(Context context, long itemId) {
+        return new ArticleLoader(context, ItemsContract.Items.buildBodyUri(itemId),
+                BodyQuery.PROJECTION);
+    }
+
+    protected ArticleLoader(Context context, Uri uri) {
+        this(context, uri, Query.PROJECTION);
+    }
+
+    private ArticleLoader(Context context, Uri uri, String[] projection) {
+        super(context, uri, projection, null, null, ItemsContract.Items.DEFAULT_SORT);
     }
 
     public interface Query {
@@ -29,7 +39,7 @@ public class ArticleLoader extends CursorLoader {
                 ItemsContract.Items.THUMB_URL,
                 ItemsContract.Items.PHOTO_URL,
                 ItemsContract.Items.ASPECT_RATIO,
-                ItemsContract.Items.BODY,
+                ItemsContract.Items.PREVIEW,
         };
 
         int _ID = 0;
@@ -39,6 +49,14 @@ public class ArticleLoader extends CursorLoader {
         int THUMB_URL = 4;
         int PHOTO_URL = 5;
         int ASPECT_RATIO = 6;
-        int BODY = 7;
+        int PREVIEW = 7;
+    }
+
+    public interface BodyQuery {
+        String[] PROJECTION = {
+                ItemsContract.Items.BODY,
+        };
+
+        int BODY = 0;
     }
 }
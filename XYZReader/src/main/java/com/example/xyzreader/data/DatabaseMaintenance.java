@@ -0,0 +1,204 @@
+package com.example.xyzreader.data;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.xyzreader.metrics.Metrics;
+import com.example.xyzreader.ui.ImageLoaderHelper;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Keeps the article archive within a {@link RetentionPolicy}: evicts the articles the policy
+ * doesn't keep along with their cached images, then compacts the database. Maintenance runs at
+ * most once a day while the device is idle and charging, as a {@link MaintenanceJobService} job
+ * from Lollipop on and after a sync on older versions. The outcome of the last run is persisted
+ * for the diagnostics screen.
+ */
+public class DatabaseMaintenance {
+    private static final String TAG = "DatabaseMaintenance";
+    private static final String PREFS_NAME = "maintenance";
+
+    private static final String KEY_LAST_RUN_TIME = "last_run_time";
+    private static final String KEY_PRUNED_BY_AGE = "pruned_by_age";
+    private static final String KEY_PRUNED_BY_COUNT = "pruned_by_count";
+    private static final String KEY_PRUNED_BY_SIZE = "pruned_by_size";
+    private static final String KEY_IMAGES_EVICTED = "images_evicted";
+    private static final String KEY_BYTES_BEFORE = "bytes_before";
+    private static final String KEY_BYTES_AFTER = "bytes_after";
+
+    /** Keys of {@link #getDatabaseStats()}. */
+    public static final String STAT_ROWS = ItemsProvider.EXTRA_ROWS;
+    public static final String STAT_BYTES = ItemsProvider.EXTRA_DATABASE_BYTES;
+    public static final String STAT_FREE_BYTES = ItemsProvider.EXTRA_FREE_BYTES;
+
+    static final int JOB_ID = 1;
+    static final long INTERVAL_MILLIS = DateUtils.DAY_IN_MILLIS;
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    public DatabaseMaintenance(Context context) {
+        mContext = context.getApplicationContext();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Schedules the daily maintenance job, if it isn't already. Before Lollipop there's no job
+     * scheduler, and {@link UpdaterService} calls {@link #runIfDue(boolean)} instead.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(context);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, MaintenanceJobService.class))
+                .setPeriodic(INTERVAL_MILLIS)
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .setPersisted(false)
+                .build());
+    }
+
+    /** Whether the device is plugged in, for versions without the job scheduler. */
+    static boolean isCharging(Context context) {
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    /** Whether the last run is older than the maintenance interval, or there never was one. */
+    public boolean isDue() {
+        long lastRun = getLastRunTime();
+        long now = System.currentTimeMillis();
+        return lastRun == 0 || lastRun > now || now - lastRun > INTERVAL_MILLIS;
+    }
+
+    /** Runs maintenance if it's due, with the policy for this device. Call off the main thread. */
+    void runIfDue(boolean allowFullVacuum) {
+        if (isDue()) {
+            run(RetentionPolicy.forDevice(mContext), allowFullVacuum);
+        }
+    }
+
+    /**
+     * Applies the policy and compacts the database. A full VACUUM rewrites the whole file, so
+     * only allow it when the device has time to spare. Call off the main thread.
+     */
+    public void run(RetentionPolicy policy, boolean allowFullVacuum) {
+        long start = Metrics.start();
+        long bytesBefore = getDatabaseFile().length();
+
+        Bundle pruned = mContext.getContentResolver().call(ItemsContract.BASE_URI,
+                ItemsProvider.METHOD_PRUNE, null, policy.toBundle());
+        int prunedRows = pruned.getInt(ItemsProvider.EXTRA_PRUNED_BY_AGE)
+                + pruned.getInt(ItemsProvider.EXTRA_PRUNED_BY_COUNT)
+                + pruned.getInt(ItemsProvider.EXTRA_PRUNED_BY_SIZE);
+        if (prunedRows > 0) {
+            // Don't let the next cold start show articles that are gone
+            ListSnapshot.update(mContext);
+        }
+
+        int imagesEvicted = 0;
+        ArrayList<String> urls = pruned.getStringArrayList(ItemsProvider.EXTRA_EVICTED_URLS);
+        if (urls != null && !urls.isEmpty()) {
+            ImageLoaderHelper images = ImageLoaderHelper.getInstance(mContext);
+            for (String url : urls) {
+                if (url != null) {
+                    images.evictFromDiskCache(url);
+                    imagesEvicted++;
+                }
+            }
+        }
+
+        Bundle compactExtras = new Bundle();
+        compactExtras.putBoolean(ItemsProvider.EXTRA_FULL_VACUUM, allowFullVacuum);
+        mContext.getContentResolver().call(ItemsContract.BASE_URI,
+                ItemsProvider.METHOD_COMPACT, null, compactExtras);
+        long bytesAfter = getDatabaseFile().length();
+
+        mPrefs.edit()
+                .putLong(KEY_LAST_RUN_TIME, System.currentTimeMillis())
+                .putInt(KEY_PRUNED_BY_AGE, pruned.getInt(ItemsProvider.EXTRA_PRUNED_BY_AGE))
+                .putInt(KEY_PRUNED_BY_COUNT, pruned.getInt(ItemsProvider.EXTRA_PRUNED_BY_COUNT))
+                .putInt(KEY_PRUNED_BY_SIZE, pruned.getInt(ItemsProvider.EXTRA_PRUNED_BY_SIZE))
+                .putInt(KEY_IMAGES_EVICTED, imagesEvicted)
+                .putLong(KEY_BYTES_BEFORE, bytesBefore)
+                .putLong(KEY_BYTES_AFTER, bytesAfter)
+                .apply();
+        Metrics.stop(Metrics.MAINTENANCE_TIME, start);
+        Log.i(TAG, "Maintenance with " + policy + ": " + this);
+    }
+
+    private File getDatabaseFile() {
+        return mContext.getDatabasePath(ItemsDatabase.DATABASE_NAME);
+    }
+
+    /** The live row count and file usage of the database. Runs a query, keep it off hot paths. */
+    public Bundle getDatabaseStats() {
+        return mContext.getContentResolver().call(ItemsContract.BASE_URI,
+                ItemsProvider.METHOD_STATS, null, null);
+    }
+
+    public long getLastRunTime() {
+        return mPrefs.getLong(KEY_LAST_RUN_TIME, 0);
+    }
+
+    public int getLastPrunedByAge() {
+        return mPrefs.getInt(KEY_PRUNED_BY_AGE, 0);
+    }
+
+    public int getLastPrunedByCount() {
+        return mPrefs.getInt(KEY_PRUNED_BY_COUNT, 0);
+    }
+
+    public int getLastPrunedBySize() {
+        return mPrefs.getInt(KEY_PRUNED_BY_SIZE, 0);
+    }
+
+    public int getLastImagesEvicted() {
+        return mPrefs.getInt(KEY_IMAGES_EVICTED, 0);
+    }
+
+    public long getLastBytesBefore() {
+        return mPrefs.getLong(KEY_BYTES_BEFORE, 0);
+    }
+
+    public long getLastBytesAfter() {
+        return mPrefs.getLong(KEY_BYTES_AFTER, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseMaintenance[prunedByAge=" + getLastPrunedByAge()
+                + ", prunedByCount=" + getLastPrunedByCount()
+                + ", prunedBySize=" + getLastPrunedBySize()
+                + ", imagesEvicted=" + getLastImagesEvicted()
+                + ", bytesBefore=" + getLastBytesBefore()
+                + ", bytesAfter=" + getLastBytesAfter() + "]";
+    }
+}
@@ -9,13 +9,18 @@ public class ItemsContract {
 	interface ItemsColumns {
 		/** Type: INTEGER PRIMARY KEY AUTOINCREMENT */
 		String _ID = "_id";
-		/** Type: TEXT */
+		/**
+		 * Type: TEXT NOT NULL DEFAULT '', the id of the feed the article came from, see
+		 * {@link com.example.xyzreader.remote.FeedSource}
+		 */
+		String SOURCE_ID = "source_id";
+		/** Type: TEXT, unique within a source */
 		String SERVER_ID = "server_id";
 		/** Type: TEXT NOT NULL */
 		String TITLE = "title";
 		/** Type: TEXT NOT NULL */
 		String AUTHOR = "author";
-		/** Type: TEXT NOT NULL */
+		/** Type: TEXT NOT NULL, stored compressed on its own, see {@link Items#buildBodyUri(long)} */
 		String BODY = "body";
         /** Type: TEXT NOT NULL */
         String THUMB_URL = "thumb_url";
@@ -25,11 +30,16 @@ public class ItemsContract {
 		String ASPECT_RATIO = "aspect_ratio";
 		/** Type: INTEGER NOT NULL DEFAULT 0 */
 		String PUBLISHED_DATE = "published_date";
+		/** Type: INTEGER NOT NULL DEFAULT 0, see {@link ThumbnailPreview} */
+		String PREVIEW = "preview";
+		/** Type: INTEGER NOT NULL DEFAULT 0, of the feed item the row was written from */
+		String CONTENT_HASH = "content_hash";
 	}
 
 	public static class Items implements ItemsColumns {
 		public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.com.example.xyzreader.items";
 		public static final String CONTENT_ITEM_TYPE = "vnd.android.cursor.item/vnd.com.example.xyzreader.items";
+		public static final String CONTENT_BODY_TYPE = "vnd.android.cursor.item/vnd.com.example.xyzreader.body";
 
         public static final String DEFAULT_SORT = PUBLISHED_DATE + " DESC";
 
@@ -43,6 +53,12 @@ public class ItemsContract {
 			return BASE_URI.buildUpon().appendPath("items").appendPath(Long.toString(_id)).build();
 		}
 
+		/** Matches: /items/[_id]/body/, the only URI the {@link #BODY} can be queried from */
+		public static Uri buildBodyUri(long _id) {
+			return BASE_URI.buildUpon().appendPath("items").appendPath(Long.toString(_id))
+					.appendPath("body").build();
+		}
+
         /** Read item ID item detail URI. */
         public static long getItemId(Uri itemUri) {
             return Long.parseLong(itemUri.getPathSegments().get(1));
@@ -7,31 +7,59 @@ import android.database.sqlite.SQLiteOpenHelper;
 import static com.example.xyzreader.data.ItemsProvider.Tables;
 
 public class ItemsDatabase extends SQLiteOpenHelper {
-    private static final String DATABASE_NAME = "xyzreader.db";
-    private static final int DATABASE_VERSION = 1;
+    static final String DATABASE_NAME = "xyzreader.db";
+    static final int DATABASE_VERSION = 6;
 
     public ItemsDatabase(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Lets maintenance release the pages freed by deletes without rewriting the whole file.
+        // It only takes effect on a new database, or after the next full VACUUM
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL("CREATE TABLE " + Tables.ITEMS + " ("
                 + ItemsContract.ItemsColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + ItemsContract.ItemsColumns.SOURCE_ID + " TEXT NOT NULL DEFAULT '',"
                 + ItemsContract.ItemsColumns.SERVER_ID + " TEXT,"
                 + ItemsContract.ItemsColumns.TITLE + " TEXT NOT NULL,"
                 + ItemsContract.ItemsColumns.AUTHOR + " TEXT NOT NULL,"
-                + ItemsContract.ItemsColumns.BODY + " TEXT NOT NULL,"
                 + ItemsContract.ItemsColumns.THUMB_URL + " TEXT NOT NULL,"
                 + ItemsContract.ItemsColumns.PHOTO_URL + " TEXT NOT NULL,"
                 + ItemsContract.ItemsColumns.ASPECT_RATIO + " REAL NOT NULL DEFAULT 1.5,"
-                + ItemsContract.ItemsColumns.PUBLISHED_DATE + " INTEGER NOT NULL DEFAULT 0"
+                + ItemsContract.ItemsColumns.PUBLISHED_DATE + " INTEGER NOT NULL DEFAULT 0,"
+                + ItemsContract.ItemsColumns.PREVIEW + " INTEGER NOT NULL DEFAULT 0,"
+                + ItemsContract.ItemsColumns.CONTENT_HASH + " INTEGER NOT NULL DEFAULT 0"
+                + ")" );
+        // Each source's sync looks its own articles up by server id to update them in place
+        db.execSQL("CREATE UNIQUE INDEX " + Tables.ITEMS + "_source_server_id ON " + Tables.ITEMS
+                + " (" + ItemsContract.ItemsColumns.SOURCE_ID + ", "
+                + ItemsContract.ItemsColumns.SERVER_ID + ")" );
+        // The timeline merges every source newest first, walking this instead of sorting
+        db.execSQL("CREATE INDEX " + Tables.ITEMS + "_published_date ON " + Tables.ITEMS
+                + " (" + ItemsContract.ItemsColumns.PUBLISHED_DATE + ")" );
+
+        // Bodies are only read by the detail screen, so they're kept compressed and out of the
+        // pages the list reads
+        db.execSQL("CREATE TABLE " + Tables.BODIES + " ("
+                + ItemsContract.ItemsColumns._ID + " INTEGER PRIMARY KEY,"
+                + ItemsContract.ItemsColumns.BODY + " BLOB NOT NULL"
                 + ")" );
+        db.execSQL("CREATE TRIGGER " + Tables.ITEMS + "_delete_body AFTER DELETE ON "
+                + Tables.ITEMS + " BEGIN DELETE FROM " + Tables.BODIES + " WHERE "
+                + ItemsContract.ItemsColumns._ID + " = OLD." + ItemsContract.ItemsColumns._ID
+                + "; END" );
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         db.execSQL("DROP TABLE IF EXISTS " + Tables.ITEMS);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.BODIES);
         onCreate(db);
     }
 }
@@ -4,34 +4,89 @@ package com.example.xyzreader.data;
 import android.content.ContentProvider;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.net.Uri;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.example.xyzreader.metrics.Metrics;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.DataFormatException;
 
 public class ItemsProvider extends ContentProvider {
+	private static final String TAG = "ItemsProvider";
+
 	private SQLiteOpenHelper mOpenHelper;
 
+	/* The changes of the batch running on the calling thread, notified once it commits */
+	private final ThreadLocal<ChangeSet> mBatchChanges = new ThreadLocal<ChangeSet>();
+
+	/*
+	 * Cursors over the whole table watch this instead of the items directory: a notification on a
+	 * directory also reaches the observers of every row under it, so notifying the directory for
+	 * any change would reload every open detail page.
+	 */
+	private static final Uri LIST_NOTIFICATION_URI =
+			ItemsContract.BASE_URI.buildUpon().appendPath("items_list").build();
+
+	/* Past this many changed rows, notify the whole directory rather than each row */
+	private static final int MAX_ITEM_NOTIFICATIONS = 32;
+
+	/* Maintenance, see DatabaseMaintenance */
+	static final String METHOD_PRUNE = "prune";
+	static final String METHOD_COMPACT = "compact";
+	static final String METHOD_STATS = "stats";
+	static final String EXTRA_PRUNED_BY_AGE = "pruned_by_age";
+	static final String EXTRA_PRUNED_BY_COUNT = "pruned_by_count";
+	static final String EXTRA_PRUNED_BY_SIZE = "pruned_by_size";
+	static final String EXTRA_EVICTED_URLS = "evicted_urls";
+	static final String EXTRA_FULL_VACUUM = "full_vacuum";
+	static final String EXTRA_DATABASE_BYTES = "database_bytes";
+	static final String EXTRA_FREE_BYTES = "free_bytes";
+	static final String EXTRA_ROWS = "rows";
+
+	private static final int MAX_SIZE_PRUNE_PASSES = 3;
+	private static final long AUTO_VACUUM_INCREMENTAL = 2;
+	private static final String[] IMAGE_COLUMNS = {
+			ItemsContract.Items.THUMB_URL, ItemsContract.Items.PHOTO_URL};
+
 	interface Tables {
 		String ITEMS = "items";
+		String BODIES = "bodies";
 	}
 
 	private static final int ITEMS = 0;
 	private static final int ITEMS__ID = 1;
+	private static final int ITEMS__ID_BODY = 2;
 
 	private static final UriMatcher sUriMatcher = buildUriMatcher();
 
+	/* The queries the list and detail screens make, with their SQL built once */
+	private static final SelectionBuilder.Template ITEM_BY_ID = new SelectionBuilder.Template(
+			Tables.ITEMS, ItemsContract.Items._ID + "=?", null);
+	private static final SelectionBuilder.Template ALL_ITEMS = new SelectionBuilder.Template(
+			Tables.ITEMS, null, ItemsContract.Items.DEFAULT_SORT);
+	private static final SelectionBuilder.Template BODY_BY_ID = new SelectionBuilder.Template(
+			Tables.BODIES, ItemsContract.Items._ID + "=?", null);
+	private static final String[] BODY_COLUMNS = {ItemsContract.Items.BODY};
+
 	private static UriMatcher buildUriMatcher() {
 		final UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
 		final String authority = ItemsContract.CONTENT_AUTHORITY;
 		matcher.addURI(authority, "items", ITEMS);
 		matcher.addURI(authority, "items/#", ITEMS__ID);
+		matcher.addURI(authority, "items/#/body", ITEMS__ID_BODY);
 		return matcher;
 	}
 
@@ -41,6 +96,12 @@ public class ItemsProvider extends ContentProvider {
 		return true;
 	}
 
+	@Override
+	public void shutdown() {
+		mOpenHelper.close();
+		super.shutdown();
+	}
+
 	@Override
 	public String getType(Uri uri) {
 		final int match = sUriMatcher.match(uri);
@@ -49,6 +110,8 @@ public class ItemsProvider extends ContentProvider {
 				return ItemsContract.Items.CONTENT_TYPE;
 			case ITEMS__ID:
 				return ItemsContract.Items.CONTENT_ITEM_TYPE;
+			case ITEMS__ID_BODY:
+				return ItemsContract.Items.CONTENT_BODY_TYPE;
 			default:
 				throw new UnsupportedOperationException("Unknown uri: " + uri);
 		}
@@ -56,23 +119,81 @@ public class ItemsProvider extends ContentProvider {
 
 	@Override
 	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+		final long start = Metrics.start();
 		final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-		final SelectionBuilder builder = buildSelection(uri);
-		Cursor cursor = builder.where(selection, selectionArgs).query(db, projection, sortOrder);
+		final int match = sUriMatcher.match(uri);
+		Cursor cursor;
+		if (match == ITEMS__ID_BODY) {
+			cursor = queryBody(db, uri);
+		} else if (match == ITEMS__ID && TextUtils.isEmpty(selection)) {
+			// A single row, so the sort order doesn't matter
+			cursor = ITEM_BY_ID.query(db, projection, uri.getPathSegments().get(1));
+		} else if (match == ITEMS && TextUtils.isEmpty(selection)
+				&& ItemsContract.Items.DEFAULT_SORT.equals(sortOrder)) {
+			cursor = ALL_ITEMS.query(db, projection);
+		} else {
+			final SelectionBuilder builder = buildSelection(uri, match, new SelectionBuilder());
+			cursor = builder.where(selection, selectionArgs).query(db, projection, sortOrder);
+		}
         if (cursor != null) {
-            cursor.setNotificationUri(getContext().getContentResolver(), uri);
+            // Fill the window now so the timing covers the query itself, not just its preparation
+            cursor.getCount();
+            cursor.setNotificationUri(getContext().getContentResolver(),
+                    match == ITEMS ? LIST_NOTIFICATION_URI : uri);
         }
+        Metrics.stop(Metrics.PROVIDER_QUERY_TIME, start);
         return cursor;
 	}
 
+	/*
+	 * Inflates the article's body into a one row cursor with just the body column, which is the
+	 * only way it's handed out
+	 */
+	private Cursor queryBody(SQLiteDatabase db, Uri uri) {
+		final String id = uri.getPathSegments().get(1);
+		final MatrixCursor cursor = new MatrixCursor(BODY_COLUMNS, 1);
+		final Cursor stored = BODY_BY_ID.query(db, BODY_COLUMNS, id);
+		try {
+			if (stored.moveToFirst()) {
+				cursor.addRow(new Object[]{BodyCompression.decompress(stored.getBlob(0))});
+			}
+		} catch (DataFormatException e) {
+			Log.e(TAG, "Corrupt body for article " + id, e);
+		} finally {
+			stored.close();
+		}
+		return cursor;
+	}
+
 	@Override
 	public Uri insert(Uri uri, ContentValues values) {
 		final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
 		final int match = sUriMatcher.match(uri);
 		switch (match) {
 			case ITEMS: {
-				final long _id = db.insertOrThrow(Tables.ITEMS, null, values);
-                getContext().getContentResolver().notifyChange(uri, null);
+				final String body = values.getAsString(ItemsContract.Items.BODY);
+				if (body != null) {
+					// Operations can be applied again, so leave their values as they were
+					values = new ContentValues(values);
+					values.remove(ItemsContract.Items.BODY);
+				}
+
+				final long _id;
+				db.beginTransaction();
+				try {
+					_id = db.insertOrThrow(Tables.ITEMS, null, values);
+					if (body != null) {
+						putBody(db, _id, body);
+					}
+					db.setTransactionSuccessful();
+				} finally {
+					db.endTransaction();
+				}
+
+				// Nothing can be watching a row that didn't exist, only the list changes
+				final ChangeSet changes = beginChanges();
+				changes.mListChanged = true;
+				endChanges(changes);
 				return ItemsContract.Items.buildItemUri(_id);
 			}
 			default: {
@@ -84,23 +205,99 @@ public class ItemsProvider extends ContentProvider {
 	@Override
 	public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
 		final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-		final SelectionBuilder builder = buildSelection(uri);
-        getContext().getContentResolver().notifyChange(uri, null);
-		return builder.where(selection, selectionArgs).update(db, values);
+		final int match = sUriMatcher.match(uri);
+		final SelectionBuilder builder = buildSelection(uri, match, new SelectionBuilder());
+
+		final String body = values.getAsString(ItemsContract.Items.BODY);
+		if (body != null) {
+			if (match != ITEMS__ID || !TextUtils.isEmpty(selection)) {
+				throw new UnsupportedOperationException(
+						"Bodies can only be updated one article at a time: " + uri);
+			}
+			values = new ContentValues(values);
+			values.remove(ItemsContract.Items.BODY);
+		}
+
+		int count;
+		db.beginTransaction();
+		try {
+			if (body == null || values.size() > 0) {
+				count = builder.where(selection, selectionArgs).update(db, values);
+			} else {
+				// Only the body changes, as long as the article exists
+				count = (int) DatabaseUtils.queryNumEntries(db, Tables.ITEMS,
+						builder.getSelection(), builder.getSelectionArgs());
+			}
+			if (body != null && count > 0) {
+				putBody(db, ItemsContract.Items.getItemId(uri), body);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		recordChange(uri, match, count);
+		return count;
+	}
+
+	/* Bodies of deleted articles go with them, through a trigger on the items table */
+	private static void putBody(SQLiteDatabase db, long id, String body) {
+		final ContentValues values = new ContentValues(2);
+		values.put(ItemsContract.Items._ID, id);
+		values.put(ItemsContract.Items.BODY, BodyCompression.compress(body));
+		db.insertWithOnConflict(Tables.BODIES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
 	}
 
 	@Override
 	public int delete(Uri uri, String selection, String[] selectionArgs) {
 		final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-		final SelectionBuilder builder = buildSelection(uri);
-        getContext().getContentResolver().notifyChange(uri, null);
-		return builder.where(selection, selectionArgs).delete(db);
+		final int match = sUriMatcher.match(uri);
+		final SelectionBuilder builder = buildSelection(uri, match, new SelectionBuilder());
+		final int count = builder.where(selection, selectionArgs).delete(db);
+		recordChange(uri, match, count);
+		return count;
 	}
 
-	private SelectionBuilder buildSelection(Uri uri) {
-		final SelectionBuilder builder = new SelectionBuilder();
-		final int match = sUriMatcher.match(uri);
-		return buildSelection(uri, match, builder);
+	/* Records which rows an update or delete touched, if it touched any */
+	private void recordChange(Uri uri, int match, int count) {
+		if (count == 0) {
+			return;
+		}
+		final ChangeSet changes = beginChanges();
+		changes.mListChanged = true;
+		if (match == ITEMS__ID) {
+			changes.addItem(ItemsContract.Items.getItemId(uri));
+		} else {
+			// Which rows matched isn't known, so any of them may have changed
+			changes.mAllItems = true;
+		}
+		endChanges(changes);
+	}
+
+	/* The changes of the running batch, or a new set for a single operation */
+	private ChangeSet beginChanges() {
+		final ChangeSet batchChanges = mBatchChanges.get();
+		return batchChanges != null ? batchChanges : new ChangeSet();
+	}
+
+	/* Notifies a single operation's changes right away, a batch's once it commits */
+	private void endChanges(ChangeSet changes) {
+		if (changes != mBatchChanges.get()) {
+			notifyChanges(changes);
+		}
+	}
+
+	private void notifyChanges(ChangeSet changes) {
+		final ContentResolver resolver = getContext().getContentResolver();
+		if (changes.mAllItems) {
+			resolver.notifyChange(ItemsContract.Items.buildDirUri(), null);
+		} else {
+			for (int i = 0; i < changes.mItemIds.size(); i++) {
+				resolver.notifyChange(ItemsContract.Items.buildItemUri(changes.mItemIds.get(i)), null);
+			}
+		}
+		if (changes.mListChanged) {
+			resolver.notifyChange(LIST_NOTIFICATION_URI, null);
+		}
 	}
 
 	private SelectionBuilder buildSelection(Uri uri, int match, SelectionBuilder builder) {
@@ -119,25 +316,186 @@ public class ItemsProvider extends ContentProvider {
 		}
 	}
 
+	@Override
+	public Bundle call(String method, String arg, Bundle extras) {
+		if (METHOD_PRUNE.equals(method)) {
+			return prune(RetentionPolicy.fromBundle(extras));
+		} else if (METHOD_COMPACT.equals(method)) {
+			return compact(extras != null && extras.getBoolean(EXTRA_FULL_VACUUM));
+		} else if (METHOD_STATS.equals(method)) {
+			final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+			final Bundle result = new Bundle();
+			result.putLong(EXTRA_DATABASE_BYTES, getDatabaseBytes(db));
+			result.putLong(EXTRA_FREE_BYTES, getDatabaseBytes(db) - getUsedBytes(db));
+			result.putLong(EXTRA_ROWS, DatabaseUtils.queryNumEntries(db, Tables.ITEMS));
+			return result;
+		}
+		return super.call(method, arg, extras);
+	}
+
+	/*
+	 * Deletes the articles the policy doesn't keep in one transaction, and hands back the image
+	 * URLs of the deleted articles so their cached images can go too
+	 */
+	private Bundle prune(RetentionPolicy policy) {
+		final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+		final ArrayList<String> evictedUrls = new ArrayList<String>();
+		int byAge = 0;
+		final int byCount;
+		int bySize = 0;
+		db.beginTransaction();
+		try {
+			if (policy.getMaxAgeMillis() > 0) {
+				// However old they are, the newest articles stay, or a feed that stopped
+				// publishing would be emptied
+				final long cutoff = System.currentTimeMillis() - policy.getMaxAgeMillis();
+				byAge = pruneWhere(db, ItemsContract.Items.PUBLISHED_DATE + "<" + cutoff + " AND "
+						+ ItemsContract.Items._ID + " NOT IN (SELECT " + ItemsContract.Items._ID
+						+ " FROM " + Tables.ITEMS + " ORDER BY " + ItemsContract.Items.DEFAULT_SORT
+						+ " LIMIT " + policy.getMinCount() + ")", evictedUrls);
+			}
+			byCount = pruneWhere(db, ItemsContract.Items._ID + " NOT IN (SELECT "
+					+ ItemsContract.Items._ID + " FROM " + Tables.ITEMS + " ORDER BY "
+					+ ItemsContract.Items.DEFAULT_SORT + " LIMIT " + policy.getMaxCount() + ")",
+					evictedUrls);
+
+			for (int pass = 0; pass < MAX_SIZE_PRUNE_PASSES; pass++) {
+				final long usedBytes = getUsedBytes(db);
+				final long rows = DatabaseUtils.queryNumEntries(db, Tables.ITEMS);
+				if (usedBytes <= policy.getMaxDatabaseBytes() || rows == 0) {
+					break;
+				}
+				// Taking rows as equally big, drop the oldest share of them that's over budget
+				final long excess = Math.max(1, (long) Math.ceil(
+						rows * (1 - (double) policy.getMaxDatabaseBytes() / usedBytes)));
+				bySize += pruneWhere(db, ItemsContract.Items._ID + " IN (SELECT "
+						+ ItemsContract.Items._ID + " FROM " + Tables.ITEMS + " ORDER BY "
+						+ ItemsContract.Items.PUBLISHED_DATE + " ASC LIMIT " + excess + ")",
+						evictedUrls);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+
+		if (byAge + byCount + bySize > 0) {
+			final ChangeSet changes = new ChangeSet();
+			changes.mAllItems = true;
+			changes.mListChanged = true;
+			notifyChanges(changes);
+		}
+
+		final Bundle result = new Bundle();
+		result.putInt(EXTRA_PRUNED_BY_AGE, byAge);
+		result.putInt(EXTRA_PRUNED_BY_COUNT, byCount);
+		result.putInt(EXTRA_PRUNED_BY_SIZE, bySize);
+		result.putStringArrayList(EXTRA_EVICTED_URLS, evictedUrls);
+		return result;
+	}
+
+	private static int pruneWhere(SQLiteDatabase db, String where, List<String> evictedUrls) {
+		final Cursor cursor = db.query(Tables.ITEMS, IMAGE_COLUMNS, where, null, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				evictedUrls.add(cursor.getString(0));
+				evictedUrls.add(cursor.getString(1));
+			}
+		} finally {
+			cursor.close();
+		}
+		return db.delete(Tables.ITEMS, where, null);
+	}
+
+	/*
+	 * Hands the pages freed by deletes back to the file system and refreshes the query planner's
+	 * statistics. A database created before incremental vacuum was turned on needs one full
+	 * VACUUM to switch over, which rewrites the whole file and so is only done when allowed.
+	 */
+	private Bundle compact(boolean fullVacuum) {
+		final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+		if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) == AUTO_VACUUM_INCREMENTAL) {
+			runPragma(db, "PRAGMA incremental_vacuum");
+		} else if (fullVacuum) {
+			db.execSQL("VACUUM");
+		}
+		// A no-op on SQLite versions that don't know it
+		runPragma(db, "PRAGMA optimize");
+
+		final Bundle result = new Bundle();
+		result.putLong(EXTRA_DATABASE_BYTES, getDatabaseBytes(db));
+		return result;
+	}
+
+	/* Runs a pragma that may return rows, which execSQL() refuses */
+	private static void runPragma(SQLiteDatabase db, String pragma) {
+		final Cursor cursor = db.rawQuery(pragma, null);
+		try {
+			cursor.moveToFirst();
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static long getDatabaseBytes(SQLiteDatabase db) {
+		return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null)
+				* DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+	}
+
+	/* The size of the pages holding data, leaving out the free ones a vacuum would release */
+	private static long getUsedBytes(SQLiteDatabase db) {
+		return (DatabaseUtils.longForQuery(db, "PRAGMA page_count", null)
+				- DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null))
+				* DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+	}
+
     /**
      * Apply the given set of {@link ContentProviderOperation}, executing inside
      * a {@link SQLiteDatabase} transaction. All changes will be rolled back if
-     * any single one fails.
+     * any single one fails. Observers are notified once, after the transaction
+     * commits, so they never see the intermediate state (e.g. an empty table
+     * during a sync's delete-all and re-insert): each changed row on its own
+     * item URI, and the list once for the whole batch.
      */
     public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
             throws OperationApplicationException {
+        final long start = Metrics.start();
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final ContentProviderResult[] results;
+        final ChangeSet changes = new ChangeSet();
+        mBatchChanges.set(changes);
         db.beginTransaction();
         try {
             final int numOperations = operations.size();
-            final ContentProviderResult[] results = new ContentProviderResult[numOperations];
+            results = new ContentProviderResult[numOperations];
             for (int i = 0; i < numOperations; i++) {
                 results[i] = operations.get(i).apply(this, results, i);
             }
             db.setTransactionSuccessful();
-            return results;
         } finally {
             db.endTransaction();
+            mBatchChanges.remove();
+            Metrics.stop(Metrics.PROVIDER_BATCH_TIME, start);
         }
+
+        notifyChanges(changes);
+        return results;
     }
+
+	/* What a write, or a batch of them, changed */
+	private static class ChangeSet {
+		final ArrayList<Long> mItemIds = new ArrayList<Long>();
+		boolean mAllItems;
+		boolean mListChanged;
+
+		void addItem(long id) {
+			if (mAllItems || mItemIds.contains(id)) {
+				return;
+			}
+			if (mItemIds.size() == MAX_ITEM_NOTIFICATIONS) {
+				mAllItems = true;
+				return;
+			}
+			mItemIds.add(id);
+		}
+	}
 }
@@ -0,0 +1,359 @@
+package com.example.xyzreader.data;
+
+import android.content.Context;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.example.xyzreader.metrics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary copy of what the article grid shows, written after every sync so a cold start
+ * can draw the list from a memory-mapped file before the database is even opened.
+ * <p>
+ * The file is a header followed by one record per article, in list order:
+ * <pre>
+ *     header: magic, format version, database version, row count, payload length,
+ *             length of the first records (ints), CRC32 of the first records and of the rest
+ *             (longs)
+ *     record: _id, published date, thumbnail preview (longs), aspect ratio (float),
+ *             title, author, thumbnail URL, photo URL (int length, then UTF-8 bytes)
+ * </pre>
+ * A snapshot of another format or database version, or whose first records fail their checksum,
+ * is ignored and the list loads from the database as usual. The rest is only checked in the
+ * background, as the list replaces the snapshot with the database rows soon after the first
+ * frame; if it's corrupt, the snapshot is deleted so the next cold start doesn't use it.
+ */
+public class ListSnapshot {
+    private static final String TAG = "ListSnapshot";
+
+    static final String FILE_NAME = "list.snapshot";
+    private static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+
+    private static final int MAGIC = 0x58595a4c; // "XYZL"
+    private static final int FORMAT_VERSION = 4;
+    private static final int HEADER_SIZE = 6 * 4 + 2 * 8;
+    private static final int RECORD_PREFIX_SIZE = 8 + 8 + 8 + 4;
+    private static final int STRINGS_PER_RECORD = 4;
+    private static final int CHECKSUM_CHUNK_SIZE = 8 * 1024;
+    /* The records checked before a cold start draws them, about the first couple of screens */
+    private static final int CHECKED_ROWS = 24;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ListSnapshot() {
+    }
+
+    /** Rewrites the snapshot from the articles in the provider. Call off the main thread. */
+    public static void update(Context context) {
+        long start = Metrics.start();
+        Cursor cursor = context.getContentResolver().query(ItemsContract.Items.buildDirUri(),
+                ArticleLoader.Query.PROJECTION, null, null, ItemsContract.Items.DEFAULT_SORT);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            write(context, cursor);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing list snapshot", e);
+            context.deleteFile(FILE_NAME);
+        } finally {
+            cursor.close();
+        }
+        Metrics.stop(Metrics.SNAPSHOT_WRITE_TIME, start);
+    }
+
+    /*
+     * Writes the rows of a cursor over ArticleLoader.Query.PROJECTION to a temporary file, then
+     * renames it over the snapshot, so a reader never sees a half-written file
+     */
+    static void write(Context context, Cursor cursor) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(cursor.getCount() * 256);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        int rows = 0;
+        int checkedLength = -1;
+        for (cursor.moveToPosition(-1); cursor.moveToNext(); rows++) {
+            if (rows == CHECKED_ROWS) {
+                checkedLength = payload.size();
+            }
+            payload.writeLong(cursor.getLong(ArticleLoader.Query._ID));
+            payload.writeLong(cursor.getLong(ArticleLoader.Query.PUBLISHED_DATE));
+            payload.writeLong(cursor.getLong(ArticleLoader.Query.PREVIEW));
+            payload.writeFloat(cursor.getFloat(ArticleLoader.Query.ASPECT_RATIO));
+            writeString(payload, cursor.getString(ArticleLoader.Query.TITLE));
+            writeString(payload, cursor.getString(ArticleLoader.Query.AUTHOR));
+            writeString(payload, cursor.getString(ArticleLoader.Query.THUMB_URL));
+            writeString(payload, cursor.getString(ArticleLoader.Query.PHOTO_URL));
+        }
+        payload.flush();
+
+        byte[] bytes = payloadBytes.toByteArray();
+        if (checkedLength < 0) {
+            checkedLength = bytes.length;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, checkedLength);
+        long checkedCrc = crc.getValue();
+        crc.reset();
+        crc.update(bytes, checkedLength, bytes.length - checkedLength);
+
+        DataOutputStream out = new DataOutputStream(
+                context.openFileOutput(TEMP_FILE_NAME, Context.MODE_PRIVATE));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(ItemsDatabase.DATABASE_VERSION);
+            out.writeInt(rows);
+            out.writeInt(bytes.length);
+            out.writeInt(checkedLength);
+            out.writeLong(checkedCrc);
+            out.writeLong(crc.getValue());
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+
+        File temp = context.getFileStreamPath(TEMP_FILE_NAME);
+        if (!temp.renameTo(context.getFileStreamPath(FILE_NAME))) {
+            temp.delete();
+            throw new IOException("Couldn't rename " + temp);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value != null ? value.getBytes(UTF_8) : new byte[0];
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Drops the snapshot, for when the articles it lists may no longer exist. */
+    public static void delete(Context context) {
+        context.deleteFile(FILE_NAME);
+    }
+
+    /**
+     * Maps the snapshot and returns a cursor over it with the columns of
+     * {@link ArticleLoader.Query}, or null if there's no usable snapshot.
+     */
+    public static Cursor read(Context context) {
+        long start = Metrics.start();
+        FileInputStream in = null;
+        try {
+            in = context.openFileInput(FILE_NAME);
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            SnapshotCursor cursor = SnapshotCursor.open(buffer);
+            if (cursor == null) {
+                Log.w(TAG, "Ignoring a stale or corrupt list snapshot");
+                context.deleteFile(FILE_NAME);
+            } else {
+                verifyRest(context.getApplicationContext(), cursor);
+            }
+            Metrics.stop(Metrics.SNAPSHOT_READ_TIME, start);
+            return cursor;
+        } catch (IOException e) {
+            // Most likely there's no snapshot yet
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /* Checks the records past the first screens off the calling thread */
+    private static void verifyRest(final Context context, final SnapshotCursor cursor) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!cursor.verifyRest()) {
+                    Log.w(TAG, "Deleting a list snapshot that failed its checksum");
+                    context.deleteFile(FILE_NAME);
+                }
+            }
+        });
+    }
+
+    /**
+     * A read-only cursor decoding the records of a mapped snapshot on demand. Only the offset of
+     * each record is worked out up front.
+     */
+    private static class SnapshotCursor extends AbstractCursor {
+        private final ByteBuffer mBuffer;
+        private final int[] mOffsets;
+        private final int mRestOffset;
+        private final long mRestChecksum;
+
+        private SnapshotCursor(ByteBuffer buffer, int[] offsets, int restOffset,
+                long restChecksum) {
+            mBuffer = buffer;
+            mOffsets = offsets;
+            mRestOffset = restOffset;
+            mRestChecksum = restChecksum;
+        }
+
+        /*
+         * Validates the header and the checksum of the first records and indexes the records, or
+         * returns null
+         */
+        static SnapshotCursor open(ByteBuffer buffer) {
+            try {
+                if (buffer.getInt() != MAGIC
+                        || buffer.getInt() != FORMAT_VERSION
+                        || buffer.getInt() != ItemsDatabase.DATABASE_VERSION) {
+                    return null;
+                }
+                int rows = buffer.getInt();
+                int payloadLength = buffer.getInt();
+                int checkedLength = buffer.getInt();
+                long checkedChecksum = buffer.getLong();
+                long restChecksum = buffer.getLong();
+                if (rows < 0 || payloadLength != buffer.limit() - HEADER_SIZE
+                        || checkedLength < 0 || checkedLength > payloadLength
+                        || checkedChecksum != checksum(buffer, HEADER_SIZE,
+                                HEADER_SIZE + checkedLength)) {
+                    return null;
+                }
+
+                int[] offsets = new int[rows];
+                int offset = HEADER_SIZE;
+                for (int i = 0; i < rows; i++) {
+                    offsets[i] = offset;
+                    offset += RECORD_PREFIX_SIZE;
+                    for (int j = 0; j < STRINGS_PER_RECORD; j++) {
+                        int length = buffer.getInt(offset);
+                        if (length < 0) {
+                            return null;
+                        }
+                        offset += 4 + length;
+                    }
+                }
+                return offset == buffer.limit() ? new SnapshotCursor(buffer, offsets,
+                        HEADER_SIZE + checkedLength, restChecksum) : null;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+
+        /* Whether the records past the first ones match their checksum. Safe on any thread */
+        boolean verifyRest() {
+            return mRestChecksum == checksum(mBuffer, mRestOffset, mBuffer.limit());
+        }
+
+        /* CRC32 of a range of the buffer. The mapped pages are read once, a chunk at a time */
+        private static long checksum(ByteBuffer buffer, int start, int end) {
+            CRC32 crc = new CRC32();
+            byte[] chunk = new byte[CHECKSUM_CHUNK_SIZE];
+            ByteBuffer payload = buffer.duplicate();
+            payload.limit(end);
+            payload.position(start);
+            while (payload.hasRemaining()) {
+                int count = Math.min(chunk.length, payload.remaining());
+                payload.get(chunk, 0, count);
+                crc.update(chunk, 0, count);
+            }
+            return crc.getValue();
+        }
+
+        @Override
+        public int getCount() {
+            return mOffsets.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return ArticleLoader.Query.PROJECTION;
+        }
+
+        @Override
+        public String getString(int column) {
+            int offset = mOffsets[getPosition()];
+            switch (column) {
+                case ArticleLoader.Query.TITLE:
+                    return readString(offset + RECORD_PREFIX_SIZE, 0);
+                case ArticleLoader.Query.AUTHOR:
+                    return readString(offset + RECORD_PREFIX_SIZE, 1);
+                case ArticleLoader.Query.THUMB_URL:
+                    return readString(offset + RECORD_PREFIX_SIZE, 2);
+                case ArticleLoader.Query.PHOTO_URL:
+                    return readString(offset + RECORD_PREFIX_SIZE, 3);
+                case ArticleLoader.Query.ASPECT_RATIO:
+                    return Float.toString(getFloat(column));
+                default:
+                    return Long.toString(getLong(column));
+            }
+        }
+
+        /* The index-th string of the record whose strings start at offset */
+        private String readString(int offset, int index) {
+            for (int i = 0; i < index; i++) {
+                offset += 4 + mBuffer.getInt(offset);
+            }
+            byte[] bytes = new byte[mBuffer.getInt(offset)];
+            ByteBuffer source = mBuffer.duplicate();
+            source.position(offset + 4);
+            source.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+
+        @Override
+        public long getLong(int column) {
+            int offset = mOffsets[getPosition()];
+            switch (column) {
+                case ArticleLoader.Query._ID:
+                    return mBuffer.getLong(offset);
+                case ArticleLoader.Query.PUBLISHED_DATE:
+                    return mBuffer.getLong(offset + 8);
+                case ArticleLoader.Query.PREVIEW:
+                    return mBuffer.getLong(offset + 16);
+                case ArticleLoader.Query.ASPECT_RATIO:
+                    return (long) getFloat(column);
+                default:
+                    return 0;
+            }
+        }
+
+        @Override
+        public float getFloat(int column) {
+            if (column == ArticleLoader.Query.ASPECT_RATIO) {
+                return mBuffer.getFloat(mOffsets[getPosition()] + 24);
+            }
+            return getLong(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return getFloat(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.xyzreader.data;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.AsyncTask;
+import android.os.Build;
+
+/**
+ * Runs {@link DatabaseMaintenance} when the job scheduler finds the device idle and charging,
+ * which is when a full VACUUM is affordable.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MaintenanceJobService extends JobService {
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                new DatabaseMaintenance(getApplicationContext()).runIfDue(true);
+                jobFinished(params, false);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The provider runs each step in its own transaction, stopping halfway loses nothing
+        return false;
+    }
+}
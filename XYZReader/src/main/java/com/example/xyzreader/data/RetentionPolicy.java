@@ -0,0 +1,99 @@
+package com.example.xyzreader.data;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Bundle;
+import android.os.StatFs;
+import android.text.format.DateUtils;
+
+import com.example.xyzreader.R;
+
+/**
+ * How much of the archive {@link DatabaseMaintenance} keeps: articles are evicted once they're
+ * older than the maximum age, beyond the maximum count, or, oldest first, while the database is
+ * over its size budget. The age rule never evicts the newest articles up to the minimum count, so
+ * a feed that stopped publishing isn't emptied, and a maximum age of 0 turns it off. The limits
+ * come from the {@code retention_*} integer resources.
+ */
+public class RetentionPolicy {
+    private static final String KEY_MAX_AGE_MILLIS = "max_age_millis";
+    private static final String KEY_MIN_COUNT = "min_count";
+    private static final String KEY_MAX_COUNT = "max_count";
+    private static final String KEY_MAX_DATABASE_BYTES = "max_database_bytes";
+
+    /* Below this much free internal storage the tighter policy applies */
+    private static final long LOW_STORAGE_BYTES = 200L * 1024 * 1024;
+
+    private final long mMaxAgeMillis;
+    private final int mMinCount;
+    private final int mMaxCount;
+    private final long mMaxDatabaseBytes;
+
+    public RetentionPolicy(long maxAgeMillis, int minCount, int maxCount, long maxDatabaseBytes) {
+        mMaxAgeMillis = maxAgeMillis;
+        mMinCount = minCount;
+        mMaxCount = maxCount;
+        mMaxDatabaseBytes = maxDatabaseBytes;
+    }
+
+    /** The policy for the storage this device has left. */
+    @SuppressWarnings("deprecation")
+    public static RetentionPolicy forDevice(Context context) {
+        StatFs stat = new StatFs(context.getFilesDir().getPath());
+        long freeBytes = (long) stat.getAvailableBlocks() * stat.getBlockSize();
+        Resources res = context.getResources();
+        if (freeBytes < LOW_STORAGE_BYTES) {
+            return new RetentionPolicy(
+                    res.getInteger(R.integer.retention_low_storage_max_age_days)
+                            * DateUtils.DAY_IN_MILLIS,
+                    res.getInteger(R.integer.retention_low_storage_min_count),
+                    res.getInteger(R.integer.retention_low_storage_max_count),
+                    res.getInteger(R.integer.retention_low_storage_max_database_mb)
+                            * 1024L * 1024);
+        }
+        return new RetentionPolicy(
+                res.getInteger(R.integer.retention_max_age_days) * DateUtils.DAY_IN_MILLIS,
+                res.getInteger(R.integer.retention_min_count),
+                res.getInteger(R.integer.retention_max_count),
+                res.getInteger(R.integer.retention_max_database_mb) * 1024L * 1024);
+    }
+
+    /** The age past which articles are evicted, or 0 to keep them however old they are. */
+    public long getMaxAgeMillis() {
+        return mMaxAgeMillis;
+    }
+
+    /** How many of the newest articles the age rule keeps, however old they are. */
+    public int getMinCount() {
+        return mMinCount;
+    }
+
+    public int getMaxCount() {
+        return mMaxCount;
+    }
+
+    public long getMaxDatabaseBytes() {
+        return mMaxDatabaseBytes;
+    }
+
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLong(KEY_MAX_AGE_MILLIS, mMaxAgeMillis);
+        bundle.putInt(KEY_MIN_COUNT, mMinCount);
+        bundle.putInt(KEY_MAX_COUNT, mMaxCount);
+        bundle.putLong(KEY_MAX_DATABASE_BYTES, mMaxDatabaseBytes);
+        return bundle;
+    }
+
+    static RetentionPolicy fromBundle(Bundle bundle) {
+        return new RetentionPolicy(bundle.getLong(KEY_MAX_AGE_MILLIS),
+                bundle.getInt(KEY_MIN_COUNT), bundle.getInt(KEY_MAX_COUNT),
+                bundle.getLong(KEY_MAX_DATABASE_BYTES));
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionPolicy[maxAgeMillis=" + mMaxAgeMillis + ", minCount=" + mMinCount
+                + ", maxCount=" + mMaxCount + ", maxDatabaseBytes=" + mMaxDatabaseBytes + "]";
+    }
+}
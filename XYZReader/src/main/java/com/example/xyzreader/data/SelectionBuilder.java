@@ -18,6 +18,7 @@
  * Modifications:
  * -Imported from AOSP frameworks/base/core/java/com/android/internal/content
  * -Changed package name
+ * -Added Template, for queries that run with the same SQL every time
  */
 
 package com.example.xyzreader.data;
@@ -29,6 +30,7 @@ import java.util.HashMap;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.text.TextUtils;
 
 /**
@@ -206,4 +208,46 @@ public class SelectionBuilder {
         assertTable();
         return db.delete(mTable, getSelection(), getSelectionArgs());
     }
+
+    /**
+     * A query whose shape never changes, only its arguments. The SQL is built once (and again
+     * only if it's run with different columns), so running it does no string building and SQLite
+     * finds the statement already compiled in its statement cache. This class is thread safe.
+     */
+    public static class Template {
+        private final String mTable;
+        private final String mSelection;
+        private final String mOrderBy;
+
+        private String[] mColumns;
+        private String mSql;
+
+        public Template(String table, String selection, String orderBy) {
+            mTable = table;
+            mSelection = selection;
+            mOrderBy = orderBy;
+        }
+
+        /**
+         * Execute the query with the given arguments for the {@code ?}s in its selection.
+         */
+        public Cursor query(SQLiteDatabase db, String[] columns, String... selectionArgs) {
+            return db.rawQuery(getSql(columns), selectionArgs);
+        }
+
+        private synchronized String getSql(String[] columns) {
+            if (mSql == null || !Arrays.equals(columns, mColumns)) {
+                mColumns = columns != null ? columns.clone() : null;
+                mSql = SQLiteQueryBuilder.buildQueryString(false, mTable, columns, mSelection,
+                        null, null, mOrderBy, null);
+            }
+            return mSql;
+        }
+
+        @Override
+        public String toString() {
+            return "SelectionBuilder.Template[table=" + mTable + ", selection=" + mSelection
+                    + ", orderBy=" + mOrderBy + "]";
+        }
+    }
 }
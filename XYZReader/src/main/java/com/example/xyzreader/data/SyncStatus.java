@@ -0,0 +1,169 @@
+package com.example.xyzreader.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Collection;
+
+/**
+ * Persists the outcome of the feed syncs done by {@link UpdaterService} and acts as a circuit
+ * breaker for the feed endpoints: a sync fails when none of its sources could be synced, and
+ * after {@link #FAILURE_THRESHOLD} failed syncs in a row, further syncs are refused for a
+ * cool-down period that doubles with every failure, up to {@link #MAX_COOL_DOWN_MILLIS}.
+ */
+public class SyncStatus {
+    private static final String PREFS_NAME = "sync_status";
+
+    private static final String KEY_LAST_SYNC_TIME = "last_sync_time";
+    private static final String KEY_LAST_SUCCESS_TIME = "last_success_time";
+    private static final String KEY_LAST_INSERTED = "last_inserted";
+    private static final String KEY_LAST_SKIPPED = "last_skipped";
+    private static final String KEY_LAST_RETRIES = "last_retries";
+    private static final String KEY_CONSECUTIVE_FAILURES = "consecutive_failures";
+    private static final String KEY_CIRCUIT_OPEN_UNTIL = "circuit_open_until";
+    private static final String KEY_SINCE_TOKEN = "since_token";
+    private static final String KEY_FULL_SYNC_COMPLETE = "full_sync_complete";
+    /* Kept once per source, under the key and the source id */
+    private static final String[] SOURCE_KEYS = {KEY_SINCE_TOKEN, KEY_FULL_SYNC_COMPLETE};
+
+    static final int FAILURE_THRESHOLD = 3;
+    static final long INITIAL_COOL_DOWN_MILLIS = 30 * 1000;
+    static final long MAX_COOL_DOWN_MILLIS = 30 * 60 * 1000;
+
+    private final SharedPreferences mPrefs;
+
+    public SyncStatus(Context context) {
+        mPrefs = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** Whether syncs are currently being refused because the endpoint keeps failing. */
+    public boolean isCircuitOpen() {
+        return System.currentTimeMillis() < mPrefs.getLong(KEY_CIRCUIT_OPEN_UNTIL, 0);
+    }
+
+    /** Whether the last successful sync is older than {@code maxAgeMillis}, or there never was one. */
+    public boolean isStale(long maxAgeMillis) {
+        long lastSuccess = getLastSuccessTime();
+        long now = System.currentTimeMillis();
+        return lastSuccess == 0 || lastSuccess > now || now - lastSuccess > maxAgeMillis;
+    }
+
+    void recordSuccess(int inserted, int skipped, int retries) {
+        long now = System.currentTimeMillis();
+        mPrefs.edit()
+                .putLong(KEY_LAST_SYNC_TIME, now)
+                .putLong(KEY_LAST_SUCCESS_TIME, now)
+                .putInt(KEY_LAST_INSERTED, inserted)
+                .putInt(KEY_LAST_SKIPPED, skipped)
+                .putInt(KEY_LAST_RETRIES, retries)
+                .putInt(KEY_CONSECUTIVE_FAILURES, 0)
+                .putLong(KEY_CIRCUIT_OPEN_UNTIL, 0)
+                .apply();
+    }
+
+    void recordFailure(int retries) {
+        long now = System.currentTimeMillis();
+        int failures = getConsecutiveFailures() + 1;
+        long openUntil = 0;
+        if (failures >= FAILURE_THRESHOLD) {
+            int doublings = Math.min(failures - FAILURE_THRESHOLD, 16);
+            openUntil = now + Math.min(INITIAL_COOL_DOWN_MILLIS << doublings, MAX_COOL_DOWN_MILLIS);
+        }
+
+        mPrefs.edit()
+                .putLong(KEY_LAST_SYNC_TIME, now)
+                .putInt(KEY_LAST_INSERTED, 0)
+                .putInt(KEY_LAST_SKIPPED, 0)
+                .putInt(KEY_LAST_RETRIES, retries)
+                .putInt(KEY_CONSECUTIVE_FAILURES, failures)
+                .putLong(KEY_CIRCUIT_OPEN_UNTIL, openUntil)
+                .apply();
+    }
+
+    /* Kept apart from recordSuccess(), it must only be stored once the changes are applied */
+    void recordSinceToken(String sourceId, String token) {
+        mPrefs.edit().putString(getSourceKey(KEY_SINCE_TOKEN, sourceId), token).apply();
+    }
+
+    /*
+     * Cleared before a full feed is applied and set once all of its pages and deletes are in.
+     * Pages are written as they arrive, so after a failed page the source's newest articles are
+     * stored without the older ones, and asking for a delta since them would never bring those
+     */
+    void recordFullSyncComplete(String sourceId, boolean complete) {
+        mPrefs.edit().putBoolean(getSourceKey(KEY_FULL_SYNC_COMPLETE, sourceId), complete).apply();
+    }
+
+    /** Whether a full feed of this source was applied end to end, so deltas can build on it. */
+    public boolean isFullSyncComplete(String sourceId) {
+        return mPrefs.getBoolean(getSourceKey(KEY_FULL_SYNC_COMPLETE, sourceId), false);
+    }
+
+    /** The token this source's server gave with its last delta, to ask for the next one with. */
+    public String getSinceToken(String sourceId) {
+        return mPrefs.getString(getSourceKey(KEY_SINCE_TOKEN, sourceId), null);
+    }
+
+    private static String getSourceKey(String key, String sourceId) {
+        return key + "." + sourceId;
+    }
+
+    /* Forgets the state of sources other than these, and the single feed's from before */
+    void retainSources(Collection<String> sourceIds) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (String key : mPrefs.getAll().keySet()) {
+            if (key.equals(KEY_SINCE_TOKEN)) {
+                editor.remove(key);
+            }
+            for (String sourceKey : SOURCE_KEYS) {
+                String prefix = getSourceKey(sourceKey, "");
+                if (key.startsWith(prefix)
+                        && !sourceIds.contains(key.substring(prefix.length()))) {
+                    editor.remove(key);
+                }
+            }
+        }
+        editor.apply();
+    }
+
+    public long getLastSyncTime() {
+        return mPrefs.getLong(KEY_LAST_SYNC_TIME, 0);
+    }
+
+    public long getLastSuccessTime() {
+        return mPrefs.getLong(KEY_LAST_SUCCESS_TIME, 0);
+    }
+
+    /** Items written by the last sync. */
+    public int getLastInsertedCount() {
+        return mPrefs.getInt(KEY_LAST_INSERTED, 0);
+    }
+
+    /** Malformed items the last sync skipped. */
+    public int getLastSkippedCount() {
+        return mPrefs.getInt(KEY_LAST_SKIPPED, 0);
+    }
+
+    /** Fetch retries the last sync needed. */
+    public int getLastRetryCount() {
+        return mPrefs.getInt(KEY_LAST_RETRIES, 0);
+    }
+
+    public int getConsecutiveFailures() {
+        return mPrefs.getInt(KEY_CONSECUTIVE_FAILURES, 0);
+    }
+
+    public long getCircuitOpenUntil() {
+        return mPrefs.getLong(KEY_CIRCUIT_OPEN_UNTIL, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "SyncStatus[inserted=" + getLastInsertedCount()
+                + ", skipped=" + getLastSkippedCount()
+                + ", retries=" + getLastRetryCount()
+                + ", consecutiveFailures=" + getConsecutiveFailures()
+                + ", circuitOpen=" + isCircuitOpen() + "]";
+    }
+}
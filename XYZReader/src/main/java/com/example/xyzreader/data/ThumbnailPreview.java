@@ -0,0 +1,92 @@
+package com.example.xyzreader.data;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+
+/**
+ * A placeholder for an article's thumbnail, small enough to keep in its row: the average colors
+ * of the thumbnail's four quadrants as RGB 565, packed into a long from the top left quadrant to
+ * the bottom right one. The grid draws it blended across the card while the thumbnail loads.
+ * {@link #NONE} means the article has no preview yet.
+ */
+public class ThumbnailPreview {
+    public static final long NONE = 0;
+
+    /* Thumbnails are subsampled down to about this size before averaging */
+    private static final int SAMPLE_SIZE = 32;
+
+    private ThumbnailPreview() {
+    }
+
+    /** Works out the preview of an encoded image, or returns {@link #NONE} if it won't decode. */
+    public static long compute(byte[] image) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return NONE;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= SAMPLE_SIZE
+                && options.outHeight / (options.inSampleSize * 2) >= SAMPLE_SIZE) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap bitmap = BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (bitmap == null) {
+            return NONE;
+        }
+        try {
+            return compute(bitmap);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /** Works out the preview of a decoded image, which should already be small. */
+    public static long compute(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        long[] red = new long[4];
+        long[] green = new long[4];
+        long[] blue = new long[4];
+        int[] counts = new int[4];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int quadrant = (y * 2 / height) * 2 + x * 2 / width;
+                int pixel = pixels[y * width + x];
+                red[quadrant] += Color.red(pixel);
+                green[quadrant] += Color.green(pixel);
+                blue[quadrant] += Color.blue(pixel);
+                counts[quadrant]++;
+            }
+        }
+
+        long preview = 0;
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            // A one pixel wide image has nothing in its right quadrants, repeat the left ones
+            int source = counts[quadrant] > 0 ? quadrant : quadrant & ~1;
+            int count = Math.max(1, counts[source]);
+            long rgb565 = ((red[source] / count) >> 3) << 11
+                    | ((green[source] / count) >> 2) << 5
+                    | (blue[source] / count) >> 3;
+            preview |= rgb565 << (48 - 16 * quadrant);
+        }
+        // An all black thumbnail still has a preview, one that's off by the least bit of blue
+        return preview != NONE ? preview : 1;
+    }
+
+    /** The opaque color of a quadrant, 0 to 3 from the top left, row by row. */
+    public static int getColor(long preview, int quadrant) {
+        int rgb565 = (int) (preview >>> (48 - 16 * quadrant)) & 0xffff;
+        int red = rgb565 >> 11;
+        int green = (rgb565 >> 5) & 0x3f;
+        int blue = rgb565 & 0x1f;
+        return Color.rgb(red << 3 | red >> 2, green << 2 | green >> 4, blue << 3 | blue >> 2);
+    }
+}
@@ -2,21 +2,48 @@ package com.example.xyzreader.data;
 
 import android.app.IntentService;
 import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.Intent;
 import android.content.OperationApplicationException;
+import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Process;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.text.format.Time;
+import android.util.TimeFormatException;
 import android.util.Log;
 
+import com.example.xyzreader.metrics.Metrics;
+import com.example.xyzreader.remote.Config;
+import com.example.xyzreader.remote.Feed;
+import com.example.xyzreader.remote.FeedSnapshot;
+import com.example.xyzreader.remote.FeedSource;
 import com.example.xyzreader.remote.RemoteEndpointUtil;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class UpdaterService extends IntentService {
     private static final String TAG = "UpdaterService";
@@ -26,54 +53,531 @@ public class UpdaterService extends IntentService {
     public static final String EXTRA_REFRESHING
             = "com.example.xyzreader.intent.extra.REFRESHING";
 
+    private static final int MAX_FETCH_ATTEMPTS = 4;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 16 * 1000;
+
+    /* Beyond a few, parallel fetches only compete for the same connection */
+    private static final int MAX_CONCURRENT_SOURCES = 4;
+
+    /* About the first couple of screens of the grid */
+    private static final int MAX_PREVIEWS_PER_SYNC = 24;
+
+    private static final Random sRandom = new Random();
+
+    /* What the content hash covers: every column buildValues() fills in */
+    private static final String[] HASHED_COLUMNS = {
+            ItemsContract.Items.SERVER_ID,
+            ItemsContract.Items.AUTHOR,
+            ItemsContract.Items.TITLE,
+            ItemsContract.Items.BODY,
+            ItemsContract.Items.THUMB_URL,
+            ItemsContract.Items.PHOTO_URL,
+            ItemsContract.Items.ASPECT_RATIO,
+            ItemsContract.Items.PUBLISHED_DATE,
+    };
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final ThreadFactory sThreadFactory = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "SourceSync #" + mCount.incrementAndGet());
+        }
+    };
+
     public UpdaterService() {
         super(TAG);
     }
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        Time time = new Time();
+        long syncStart = Metrics.start();
+        SyncStatus status = new SyncStatus(this);
 
         sendBroadcast(
                 new Intent(BROADCAST_ACTION_STATE_CHANGE).putExtra(EXTRA_REFRESHING, true));
 
-
         // Don't even inspect the intent, we only do one thing, and that's fetch content.
-        ArrayList<ContentProviderOperation> cpo = new ArrayList<ContentProviderOperation>();
+        boolean circuitOpen = status.isCircuitOpen();
+        if (circuitOpen) {
+            Log.w(TAG, "Feed endpoints keep failing, not syncing before "
+                    + status.getCircuitOpenUntil());
+        }
 
-        Uri dirUri = ItemsContract.Items.buildDirUri();
+        // Every source is synced on its own thread and writes its pages as they come in, so a
+        // slow one doesn't hold the others' articles back. The provider keeps each thread's batch
+        // apart
+        List<FeedSource> sources = Config.getSources(this);
+        List<SourceSync> syncs = new ArrayList<SourceSync>(sources.size());
+        List<Future<SourceSync>> results = new ArrayList<Future<SourceSync>>(sources.size());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(sources.size(), MAX_CONCURRENT_SOURCES)), sThreadFactory);
+        for (FeedSource source : sources) {
+            SourceSync sync = new SourceSync(this, source, status, circuitOpen);
+            syncs.add(sync);
+            results.add(executor.submit(sync));
+        }
+        executor.shutdown();
 
-        // Delete all items
-        cpo.add(ContentProviderOperation.newDelete(dirUri).build());
+        int synced = 0;
+        int restored = 0;
+        int failed = 0;
+        int retries = 0;
+        int written = 0;
+        int skipped = 0;
+        int deleted = 0;
+        for (int i = 0; i < syncs.size(); i++) {
+            SourceSync sync = syncs.get(i);
+            try {
+                if (results.get(i).get() != null) {
+                    if (sync.mRestored) {
+                        restored++;
+                    } else {
+                        synced++;
+                    }
+                    written += sync.mWritten;
+                    skipped += sync.mSkipped;
+                    deleted += sync.mDeleted;
+                }
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Error updating content from " + sync.mSource, e.getCause());
+                failed++;
+                Metrics.increment(Metrics.SYNC_SOURCE_FAILURE);
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Interrupted updating content from " + sync.mSource, e);
+                failed++;
+                Thread.currentThread().interrupt();
+            }
+            // Only read once the sync is done, get() makes its writes visible
+            retries += sync.mRetries;
+        }
 
-        try {
-            JSONArray array = RemoteEndpointUtil.fetchJsonArray();
-            if (array == null) {
-                throw new JSONException("Invalid parsed item array" );
+        if (synced == 0 && restored == 0 && failed == 0) {
+            // Refusing to sync isn't another failure, keep the current cool-down
+            sendBroadcast(new Intent(BROADCAST_ACTION_STATE_CHANGE)
+                    .putExtra(EXTRA_REFRESHING, false));
+            return;
+        }
+
+        if (synced > 0) {
+            // A source that failed is retried with the next sync, the rest are up to date
+            status.recordSuccess(written, skipped, retries);
+            Metrics.increment(Metrics.SYNC_SUCCESS);
+            if (failed > 0) {
+                Log.w(TAG, "Synced " + synced + " of " + sources.size() + " feed sources");
             }
+        } else if (failed > 0) {
+            status.recordFailure(retries);
+            Metrics.increment(Metrics.SYNC_FAILURE);
+        } else {
+            // Only old articles from the snapshots, which says nothing about the endpoints: the
+            // failures, the circuit and the freshness of the last sync stay as they are
+            Metrics.increment(Metrics.SYNC_RESTORED);
+            Log.i(TAG, "Restored " + restored + " feed sources from their snapshots");
+        }
 
-            for (int i = 0; i < array.length(); i++) {
-                ContentValues values = new ContentValues();
-                JSONObject object = array.getJSONObject(i);
-                values.put(ItemsContract.Items.SERVER_ID, object.getString("id" ));
-                values.put(ItemsContract.Items.AUTHOR, object.getString("author" ));
-                values.put(ItemsContract.Items.TITLE, object.getString("title" ));
-                values.put(ItemsContract.Items.BODY, object.getString("body" ));
-                values.put(ItemsContract.Items.THUMB_URL, object.getString("thumb" ));
-                values.put(ItemsContract.Items.PHOTO_URL, object.getString("photo" ));
-                values.put(ItemsContract.Items.ASPECT_RATIO, object.getString("aspect_ratio" ));
-                time.parse3339(object.getString("published_date"));
-                values.put(ItemsContract.Items.PUBLISHED_DATE, time.toMillis(false));
-                cpo.add(ContentProviderOperation.newInsert(dirUri).withValues(values).build());
+        if (synced > 0 || restored > 0) {
+            if (!sources.isEmpty()) {
+                deleted += removeUnknownSources(sources, status);
             }
+            Metrics.increment(Metrics.SYNC_ITEMS_INSERTED, written);
+            Metrics.increment(Metrics.SYNC_ITEMS_SKIPPED, skipped);
+            Metrics.increment(Metrics.SYNC_ITEMS_DELETED, deleted);
 
-            getContentResolver().applyBatch(ItemsContract.CONTENT_AUTHORITY, cpo);
+            int previews = 0;
+            try {
+                previews = addPreviews();
+            } catch (RemoteException | OperationApplicationException e) {
+                Log.e(TAG, "Error adding previews", e);
+            }
+            Metrics.increment(Metrics.SYNC_PREVIEWS_ADDED, previews);
+            if (written > 0 || deleted > 0 || previews > 0) {
+                ListSnapshot.update(this);
+            }
 
-        } catch (JSONException | RemoteException | OperationApplicationException e) {
-            Log.e(TAG, "Error updating content.", e);
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP
+                    && DatabaseMaintenance.isCharging(this)) {
+                // No job scheduler to wait for an idle device, a sync while charging will do
+                new DatabaseMaintenance(this).runIfDue(false);
+            }
         }
+        Metrics.increment(Metrics.SYNC_RETRIES, retries);
+        Metrics.stop(Metrics.SYNC_TIME, syncStart);
 
         sendBroadcast(
                 new Intent(BROADCAST_ACTION_STATE_CHANGE).putExtra(EXTRA_REFRESHING, false));
     }
+
+    /*
+     * Syncs one source: fetches what changed in it, with retries, and writes each page as soon
+     * as it's in, then deletes what the source no longer has and keeps its since token. Returns
+     * itself once synced or re-hydrated from the snapshot, or null when the circuit is open and
+     * there's nothing to re-hydrate. The counts are only read after the returned future is done.
+     */
+    static class SourceSync implements Callable<SourceSync> {
+        private final Context mContext;
+        final FeedSource mSource;
+        private final SyncStatus mStatus;
+        private final boolean mCircuitOpen;
+
+        /* Whether the articles came from the on-disk snapshot rather than the network */
+        boolean mRestored;
+        int mRetries;
+        int mWritten;
+        int mSkipped;
+        int mDeleted;
+
+        SourceSync(Context context, FeedSource source, SyncStatus status, boolean circuitOpen) {
+            mContext = context;
+            mSource = source;
+            mStatus = status;
+            mCircuitOpen = circuitOpen;
+        }
+
+        @Override
+        public SourceSync call() throws IOException, JSONException, RemoteException,
+                OperationApplicationException {
+            long start = Metrics.start();
+            String sourceId = mSource.getId();
+
+            // The source's articles we have, by server id, and the newest one's date
+            HashMap<String, Long> stored = new HashMap<String, Long>();
+            HashMap<String, Long> hashes = new HashMap<String, Long>();
+            long newestDate = queryStoredItems(mContext.getContentResolver(), sourceId, stored,
+                    hashes);
+
+            // Only ask for what changed when there's something complete for the changes to apply to
+            String since = null;
+            if (!stored.isEmpty() && mStatus.isFullSyncComplete(sourceId)) {
+                since = mStatus.getSinceToken(sourceId);
+                if (since == null) {
+                    since = Long.toString(newestDate);
+                }
+            }
+
+            Feed feed = null;
+            if (!mCircuitOpen) {
+                for (int attempt = 0; attempt < MAX_FETCH_ATTEMPTS; attempt++) {
+                    try {
+                        feed = RemoteEndpointUtil.fetchFeed(mContext, mSource, since);
+                        break;
+                    } catch (IOException e) {
+                        if (attempt + 1 == MAX_FETCH_ATTEMPTS
+                                || !RemoteEndpointUtil.isTransient(e)) {
+                            Log.e(TAG, "Error fetching items JSON from " + mSource, e);
+                            break;
+                        }
+                        Log.w(TAG, "Error fetching items JSON from " + mSource + ", retrying", e);
+                        mRetries++;
+                        SystemClock.sleep(getBackoffMillis(attempt));
+                    }
+                }
+            }
+
+            if (feed == null && stored.isEmpty()) {
+                // Nothing to show at all, re-hydrate from the last feed we stored on disk
+                JSONArray snapshot =
+                        RemoteEndpointUtil.fetchSnapshotJsonArray(mContext, mSource);
+                if (snapshot != null) {
+                    feed = Feed.full(snapshot);
+                    mRestored = true;
+                }
+            }
+            if (feed == null) {
+                if (mCircuitOpen) {
+                    return null;
+                }
+                throw new JSONException("Invalid parsed item array" );
+            }
+
+            // Until the last page is in, the next sync has to fetch the full feed again
+            if (!feed.isDelta()) {
+                mStatus.recordFullSyncComplete(sourceId, false);
+            }
+            write(feed, stored, hashes);
+
+            mStatus.recordSinceToken(sourceId, feed.getSinceToken());
+            if (!feed.isDelta()) {
+                mStatus.recordFullSyncComplete(sourceId, true);
+            }
+            Metrics.stop(Metrics.SYNC_SOURCE_TIME, start);
+            return this;
+        }
+
+        /*
+         * Writes a fetched feed of the source and deletes the stored articles it no longer has,
+         * counting what it did. Leaves the sync status alone; the benchmarks write their feeds
+         * through here too.
+         */
+        void write(Feed feed, Map<String, Long> stored, Map<String, Long> hashes)
+                throws JSONException, RemoteException, OperationApplicationException {
+            // Each page is written as soon as it's in, in feed order, so the newest articles
+            // show up while the older pages are still downloading
+            ContentResolver resolver = mContext.getContentResolver();
+            // Time isn't thread-safe, each source parses its dates with its own
+            Time time = new Time();
+            HashSet<String> seen = new HashSet<String>();
+            int received = 0;
+            try {
+                for (JSONArray page = feed.getItems(); page != null; page = feed.nextPage()) {
+                    ArrayList<ContentProviderOperation> cpo =
+                            new ArrayList<ContentProviderOperation>(page.length());
+                    mSkipped += addUpserts(mSource.getId(), page, time, stored, hashes, seen,
+                            cpo);
+                    received += page.length();
+                    mWritten += cpo.size();
+                    applyBatch(resolver, cpo);
+                }
+            } finally {
+                feed.cancel();
+            }
+            if (mSkipped > 0 && mSkipped == received) {
+                // Don't replace the articles we have with nothing
+                throw new JSONException("Every item in the feed was malformed" );
+            }
+            if (mSkipped > 0) {
+                Log.w(TAG, "Skipped " + mSkipped + " malformed items out of " + received
+                        + " from " + mSource);
+            }
+
+            // A full feed lists every article there is, a delta only the ones it removes
+            Collection<Long> deletedIds = feed.isDelta()
+                    ? getStoredIds(stored, feed.getDeletedIds()) : stored.values();
+            ArrayList<ContentProviderOperation> cpo =
+                    new ArrayList<ContentProviderOperation>(deletedIds.size());
+            for (long id : deletedIds) {
+                cpo.add(ContentProviderOperation.newDelete(ItemsContract.Items.buildItemUri(id))
+                        .build());
+            }
+            applyBatch(resolver, cpo);
+            mDeleted = deletedIds.size();
+        }
+    }
+
+    /*
+     * Deletes the articles, sync state and snapshots of sources that are no longer configured.
+     * Returns how many articles were deleted
+     */
+    private int removeUnknownSources(List<FeedSource> sources, SyncStatus status) {
+        List<String> ids = new ArrayList<String>(sources.size());
+        StringBuilder placeholders = new StringBuilder();
+        for (FeedSource source : sources) {
+            ids.add(source.getId());
+            placeholders.append(placeholders.length() == 0 ? "?" : ",?");
+        }
+        int deleted = getContentResolver().delete(ItemsContract.Items.buildDirUri(),
+                ItemsContract.Items.SOURCE_ID + " NOT IN (" + placeholders + ")",
+                ids.toArray(new String[ids.size()]));
+        status.retainSources(ids);
+        FeedSnapshot.retainOnly(this, ids);
+        if (deleted > 0) {
+            Log.i(TAG, "Deleted " + deleted + " articles of feed sources no longer synced");
+        }
+        return deleted;
+    }
+
+    /**
+     * Jittered exponential backoff: a random delay between zero and an upper bound that doubles
+     * with every attempt, so clients that failed together don't all retry at the same moment.
+     */
+    private static long getBackoffMillis(int attempt) {
+        long bound = Math.min(INITIAL_BACKOFF_MILLIS << attempt, MAX_BACKOFF_MILLIS);
+        return (long) (sRandom.nextDouble() * bound);
+    }
+
+    /**
+     * Validates a single feed item and converts it to {@link ContentValues}, or returns null if
+     * the item can't be stored. Only the aspect ratio is optional, the column has a default.
+     */
+    static ContentValues buildValues(JSONObject object, Time time) {
+        if (object == null) {
+            return null;
+        }
+
+        try {
+            ContentValues values = new ContentValues();
+            values.put(ItemsContract.Items.SERVER_ID, object.getString("id" ));
+            values.put(ItemsContract.Items.AUTHOR, object.getString("author" ));
+            values.put(ItemsContract.Items.TITLE, object.getString("title" ));
+            values.put(ItemsContract.Items.BODY, object.getString("body" ));
+            values.put(ItemsContract.Items.THUMB_URL, object.getString("thumb" ));
+            values.put(ItemsContract.Items.PHOTO_URL, object.getString("photo" ));
+            double aspectRatio = object.optDouble("aspect_ratio" );
+            if (!Double.isNaN(aspectRatio) && aspectRatio > 0) {
+                values.put(ItemsContract.Items.ASPECT_RATIO, aspectRatio);
+            }
+            time.parse3339(object.getString("published_date"));
+            values.put(ItemsContract.Items.PUBLISHED_DATE, time.toMillis(false));
+            return values;
+        } catch (JSONException | TimeFormatException e) {
+            Log.w(TAG, "Skipping malformed item " + object.optString("id" ), e);
+            return null;
+        }
+    }
+
+    /* Timed on its own, a paged sync spends most of its time waiting for the network */
+    private static void applyBatch(ContentResolver resolver,
+            ArrayList<ContentProviderOperation> cpo)
+            throws RemoteException, OperationApplicationException {
+        if (cpo.isEmpty()) {
+            return;
+        }
+        long start = Metrics.start();
+        resolver.applyBatch(ItemsContract.CONTENT_AUTHORITY, cpo);
+        Metrics.stop(Metrics.SYNC_DB_TIME, start);
+    }
+
+    /**
+     * Adds an operation writing each valid item of a feed page. Articles we already have are
+     * updated in place, so they keep their _id and the list only hears about the rows that
+     * changed. Articles whose content hash matches {@code hashes} are left alone altogether, so an
+     * unchanged feed writes nothing. Each one found is taken out of {@code stored}, which holds
+     * the articles of the same source. Returns how many items were skipped, as malformed or
+     * already seen.
+     */
+    static int addUpserts(String sourceId, JSONArray page, Time time, Map<String, Long> stored,
+            Map<String, Long> hashes, Set<String> seen, List<ContentProviderOperation> cpo) {
+        Uri dirUri = ItemsContract.Items.buildDirUri();
+        int skipped = 0;
+        for (int i = 0; i < page.length(); i++) {
+            ContentValues values = buildValues(page.optJSONObject(i), time);
+            if (values == null || !seen.add(values.getAsString(ItemsContract.Items.SERVER_ID))) {
+                skipped++;
+                continue;
+            }
+            String serverId = values.getAsString(ItemsContract.Items.SERVER_ID);
+            long hash = hashContent(values);
+            values.put(ItemsContract.Items.SOURCE_ID, sourceId);
+            values.put(ItemsContract.Items.CONTENT_HASH, hash);
+            Long id = stored.remove(serverId);
+            Long storedHash = hashes.get(serverId);
+            if (id != null && storedHash != null && storedHash == hash) {
+                continue;
+            } else if (id != null) {
+                cpo.add(ContentProviderOperation.newUpdate(ItemsContract.Items.buildItemUri(id))
+                        .withValues(values).build());
+            } else {
+                cpo.add(ContentProviderOperation.newInsert(dirUri).withValues(values).build());
+            }
+        }
+        return skipped;
+    }
+
+    /*
+     * 64-bit FNV-1a over the columns a feed item sets, so an unchanged article is recognized
+     * without reading its body back
+     */
+    static long hashContent(ContentValues values) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String column : HASHED_COLUMNS) {
+            Object value = values.get(column);
+            String string = value != null ? value.toString() : "";
+            for (int i = 0; i < string.length(); i++) {
+                hash = (hash ^ string.charAt(i)) * FNV_PRIME;
+            }
+            // Keeps "ab", "c" apart from "a", "bc"
+            hash = (hash ^ 0xffff) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /*
+     * Downloads the thumbnails of the newest articles that don't have a preview yet, works their
+     * previews out and stores them in one batch. Returns how many were added. A thumbnail the
+     * server doesn't have is skipped; any other network error leaves the rest for the next sync.
+     */
+    private int addPreviews() throws RemoteException, OperationApplicationException {
+        long start = Metrics.start();
+        ArrayList<Long> ids = new ArrayList<Long>();
+        ArrayList<String> urls = new ArrayList<String>();
+        Cursor cursor = getContentResolver().query(ItemsContract.Items.buildDirUri(),
+                new String[]{ItemsContract.Items._ID, ItemsContract.Items.THUMB_URL},
+                ItemsContract.Items.PREVIEW + "=" + ThumbnailPreview.NONE, null,
+                ItemsContract.Items.DEFAULT_SORT);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            while (ids.size() < MAX_PREVIEWS_PER_SYNC && cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+                urls.add(cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ArrayList<ContentProviderOperation> cpo =
+                new ArrayList<ContentProviderOperation>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            long preview;
+            try {
+                preview = ThumbnailPreview.compute(
+                        RemoteEndpointUtil.fetchImage(this, urls.get(i)));
+            } catch (RemoteEndpointUtil.HttpStatusException e) {
+                Log.w(TAG, "No thumbnail for a preview at " + urls.get(i), e);
+                continue;
+            } catch (IOException e) {
+                Log.w(TAG, "Error fetching thumbnails for previews", e);
+                break;
+            }
+            if (preview != ThumbnailPreview.NONE) {
+                cpo.add(ContentProviderOperation.newUpdate(
+                        ItemsContract.Items.buildItemUri(ids.get(i)))
+                        .withValue(ItemsContract.Items.PREVIEW, preview)
+                        .build());
+            }
+        }
+        applyBatch(getContentResolver(), cpo);
+        Metrics.stop(Metrics.SYNC_PREVIEW_TIME, start);
+        return cpo.size();
+    }
+
+    /*
+     * Fills in the _id and content hash of every stored article of the source by server id, and
+     * returns the newest one's date
+     */
+    private static long queryStoredItems(ContentResolver resolver, String sourceId,
+            Map<String, Long> stored, Map<String, Long> hashes) {
+        Cursor cursor = resolver.query(ItemsContract.Items.buildDirUri(),
+                new String[]{
+                        ItemsContract.Items._ID,
+                        ItemsContract.Items.SERVER_ID,
+                        ItemsContract.Items.PUBLISHED_DATE,
+                        ItemsContract.Items.CONTENT_HASH,
+                }, ItemsContract.Items.SOURCE_ID + "=?", new String[]{sourceId}, null);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            long newestDate = 0;
+            while (cursor.moveToNext()) {
+                stored.put(cursor.getString(1), cursor.getLong(0));
+                hashes.put(cursor.getString(1), cursor.getLong(3));
+                newestDate = Math.max(newestDate, cursor.getLong(2));
+            }
+            return newestDate;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static List<Long> getStoredIds(Map<String, Long> stored, List<String> serverIds) {
+        List<Long> ids = new ArrayList<Long>(serverIds.size());
+        for (String serverId : serverIds) {
+            Long id = stored.get(serverId);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
 }
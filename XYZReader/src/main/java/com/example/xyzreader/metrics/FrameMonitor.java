@@ -0,0 +1,144 @@
+package com.example.xyzreader.metrics;
+
+import android.app.Activity;
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Times the main thread's frames with {@link Choreographer} while a screen is moving, such as
+ * the grid scrolling or the pager swiping between articles, and records them under that screen's
+ * name:
+ * <pre>
+ *     frame.[screen].interval_us     time between consecutive frames
+ *     frame.[screen].work_us         timed main-thread work, see {@link #addWork(long)}
+ *     frame.[screen].janky_work_us   the same, for frames that missed at least one vsync
+ *     frame.[screen].frames          frames seen
+ *     frame.[screen].janky           frames that missed at least one vsync
+ *     frame.[screen].dropped         vsyncs missed
+ * </pre>
+ * Frames are only watched while the screen is resumed and moving, an idle screen doesn't draw.
+ * Must be used on the main thread.
+ */
+public class FrameMonitor implements Choreographer.FrameCallback {
+    private static final String TAG = "FrameMonitor";
+
+    public static final String SCREEN_LIST = "list";
+    public static final String SCREEN_DETAIL = "detail";
+
+    /* The monitor of the resumed screen, which main-thread work is attributed to */
+    private static FrameMonitor sAttached;
+
+    private final String mIntervalName;
+    private final String mWorkName;
+    private final String mJankyWorkName;
+    private final String mFramesName;
+    private final String mJankyName;
+    private final String mDroppedName;
+    private final long mFrameIntervalNanos;
+
+    private boolean mAttached;
+    private boolean mMoving;
+    private boolean mPosted;
+    private long mLastFrameNanos;
+    private long mWorkMicros;
+
+    /* What this resume of the screen saw, for the log */
+    private long mSessionFrames;
+    private long mSessionJanky;
+
+    public FrameMonitor(Activity activity, String screen) {
+        mIntervalName = "frame." + screen + ".interval_us";
+        mWorkName = "frame." + screen + ".work_us";
+        mJankyWorkName = "frame." + screen + ".janky_work_us";
+        mFramesName = "frame." + screen + ".frames";
+        mJankyName = "frame." + screen + ".janky";
+        mDroppedName = "frame." + screen + ".dropped";
+
+        float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        mFrameIntervalNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60));
+    }
+
+    /** Starts attributing main-thread work to this screen, call from {@code onResume()}. */
+    public void attach() {
+        mAttached = true;
+        sAttached = this;
+        mSessionFrames = 0;
+        mSessionJanky = 0;
+        post();
+    }
+
+    /** Stops watching frames, call from {@code onPause()}. */
+    public void detach() {
+        mAttached = false;
+        if (sAttached == this) {
+            sAttached = null;
+        }
+        stopFrames();
+        if (mSessionFrames > 0) {
+            Log.i(TAG, mFramesName + ": " + mSessionJanky + " janky out of " + mSessionFrames);
+        }
+    }
+
+    /** Whether the screen is scrolling or paging, so its frames are worth watching. */
+    public void setMoving(boolean moving) {
+        mMoving = moving;
+        if (moving) {
+            post();
+        }
+    }
+
+    /**
+     * Adds main-thread work, in microseconds, to the frame being drawn on the attached screen,
+     * if any. Takes what {@link Metrics#stop(String, long)} returns.
+     */
+    public static void addWork(long micros) {
+        FrameMonitor monitor = sAttached;
+        if (monitor != null && monitor.mPosted) {
+            monitor.mWorkMicros += micros;
+        }
+    }
+
+    private void post() {
+        if (mAttached && mMoving && !mPosted) {
+            mPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void stopFrames() {
+        if (mPosted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mPosted = false;
+        }
+        mLastFrameNanos = 0;
+        mWorkMicros = 0;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mPosted = false;
+        if (mLastFrameNanos != 0) {
+            // The work done since the last callback went into the frame that ends here
+            long interval = frameTimeNanos - mLastFrameNanos;
+            int missed = (int) ((interval + mFrameIntervalNanos / 2) / mFrameIntervalNanos) - 1;
+            Metrics.record(mIntervalName, interval / 1000);
+            Metrics.record(mWorkName, mWorkMicros);
+            Metrics.increment(mFramesName);
+            mSessionFrames++;
+            if (missed > 0) {
+                Metrics.record(mJankyWorkName, mWorkMicros);
+                Metrics.increment(mJankyName);
+                Metrics.increment(mDroppedName, missed);
+                mSessionJanky++;
+            }
+        }
+        mWorkMicros = 0;
+
+        if (mAttached && mMoving) {
+            mLastFrameNanos = frameTimeNanos;
+            post();
+        } else {
+            stopFrames();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.xyzreader.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A fixed-size histogram with power-of-two buckets. Recording is allocation free and percentiles
+ * are estimated as the upper bound of the bucket they fall in, which is good enough to spot
+ * regressions between releases. This class is <em>not</em> thread safe, {@link Metrics}
+ * guards it.
+ */
+public class Histogram {
+    private static final int BUCKET_COUNT = 64;
+
+    private final long[] mBuckets = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mSum;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax = Long.MIN_VALUE;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mBuckets[bucketFor(value)]++;
+        mCount++;
+        mSum += value;
+        if (value < mMin) {
+            mMin = value;
+        }
+        if (value > mMax) {
+            mMax = value;
+        }
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getSum() {
+        return mSum;
+    }
+
+    public long getMin() {
+        return mCount == 0 ? 0 : mMin;
+    }
+
+    public long getMax() {
+        return mCount == 0 ? 0 : mMax;
+    }
+
+    public double getMean() {
+        return mCount == 0 ? 0 : (double) mSum / mCount;
+    }
+
+    /**
+     * Returns an upper bound for the value below which the given fraction of the recorded values
+     * fall, e.g. {@code getPercentile(0.9)} for the 90th percentile.
+     */
+    public long getPercentile(double fraction) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(fraction * mCount);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets[i];
+            if (seen >= target) {
+                return Math.min(upperBound(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets[i] = 0;
+        }
+        mCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = Long.MIN_VALUE;
+    }
+
+    public JSONObject toJson() throws JSONException {
+        return new JSONObject()
+                .put("count", getCount())
+                .put("sum", getSum())
+                .put("min", getMin())
+                .put("max", getMax())
+                .put("mean", getMean())
+                .put("p50", getPercentile(0.5))
+                .put("p90", getPercentile(0.9))
+                .put("p99", getPercentile(0.99));
+    }
+
+    /* Bucket 0 holds 0, bucket i holds [2^(i-1), 2^i) */
+    private static int bucketFor(long value) {
+        return Math.min(64 - Long.numberOfLeadingZeros(value), BUCKET_COUNT - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.xyzreader.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process-wide registry of performance counters and timers. Timers are {@link Histogram}s of
+ * durations in microseconds; use them as
+ * <pre>
+ *     long start = Metrics.start();
+ *     ...
+ *     Metrics.stop(Metrics.LIST_BIND_TIME, start);
+ * </pre>
+ * Everything can be exported as JSON with {@link #toJson()}, which is what the diagnostics
+ * screen shows.
+ */
+public class Metrics {
+    /* Feed */
+    public static final String FEED_FETCH_TIME = "feed.fetch_time_us";
+    public static final String FEED_PARSE_TIME = "feed.parse_time_us";
+    public static final String FEED_BYTES = "feed.bytes";
+    public static final String FEED_FULL = "feed.full";
+    public static final String FEED_DELTA = "feed.delta";
+    public static final String FEED_PAGES = "feed.pages";
+    public static final String FEED_PAGE_RETRIES = "feed.page_retries";
+
+    /* Sync */
+    public static final String SYNC_TIME = "sync.total_time_us";
+    public static final String SYNC_DB_TIME = "sync.db_time_us";
+    public static final String SYNC_SUCCESS = "sync.success";
+    public static final String SYNC_FAILURE = "sync.failure";
+    public static final String SYNC_RESTORED = "sync.restored";
+    public static final String SYNC_SOURCE_TIME = "sync.source_time_us";
+    public static final String SYNC_SOURCE_FAILURE = "sync.source_failure";
+    public static final String SYNC_RETRIES = "sync.retries";
+    public static final String SYNC_ITEMS_INSERTED = "sync.items_inserted";
+    public static final String SYNC_ITEMS_SKIPPED = "sync.items_skipped";
+    public static final String SYNC_ITEMS_DELETED = "sync.items_deleted";
+    public static final String SYNC_PREVIEWS_ADDED = "sync.previews_added";
+    public static final String SYNC_PREVIEW_TIME = "sync.preview_time_us";
+    public static final String SNAPSHOT_WRITE_TIME = "sync.snapshot_write_time_us";
+
+    /* Provider */
+    public static final String PROVIDER_QUERY_TIME = "provider.query_time_us";
+    public static final String PROVIDER_BATCH_TIME = "provider.batch_time_us";
+    public static final String MAINTENANCE_TIME = "provider.maintenance_time_us";
+
+    /* Images */
+    public static final String IMAGE_CACHE_HIT = "image.memory_cache_hit";
+    public static final String IMAGE_CACHE_MISS = "image.memory_cache_miss";
+    public static final String IMAGE_VARIANT_HIT = "image.variant_cache_hit";
+    public static final String IMAGE_VARIANT_MISS = "image.variant_cache_miss";
+    public static final String IMAGE_VARIANT_DECODE_TIME = "image.variant_decode_time_us";
+
+    /* Startup, from ArticleListActivity.onCreate to the first frame showing articles */
+    public static final String STARTUP_COLD_TIME = "startup.cold_time_to_content_us";
+    public static final String STARTUP_WARM_TIME = "startup.warm_time_to_content_us";
+    public static final String SNAPSHOT_READ_TIME = "startup.snapshot_read_time_us";
+
+    /* UI */
+    public static final String LIST_CREATE_TIME = "list.create_holder_time_us";
+    public static final String LIST_BIND_TIME = "list.bind_time_us";
+    public static final String LIST_SIZES_TIME = "list.precompute_sizes_time_us";
+    public static final String DETAIL_BIND_TIME = "detail.bind_time_us";
+    public static final String DETAIL_BODY_LAYOUT_TIME = "detail.body_layout_time_us";
+    public static final String DETAIL_HANDOFF_HIT = "detail.handoff_hit";
+    public static final String DETAIL_HANDOFF_MISS = "detail.handoff_miss";
+    public static final String TYPEFACE_LOADS = "typeface.loads";
+
+    /* Memory, see MemoryBudget */
+    public static final String MEMORY_TRIMS = "memory.trims";
+    public static final String MEMORY_TRIMMED_BYTES = "memory.trimmed_bytes";
+
+    private static final Map<String, long[]> sCounters = new TreeMap<String, long[]>();
+    private static final Map<String, Histogram> sHistograms = new TreeMap<String, Histogram>();
+
+    private Metrics() {
+    }
+
+    public static void increment(String name) {
+        increment(name, 1);
+    }
+
+    public static synchronized void increment(String name, long delta) {
+        long[] counter = sCounters.get(name);
+        if (counter == null) {
+            counter = new long[1];
+            sCounters.put(name, counter);
+        }
+        counter[0] += delta;
+    }
+
+    public static synchronized long getCount(String name) {
+        long[] counter = sCounters.get(name);
+        return counter != null ? counter[0] : 0;
+    }
+
+    public static synchronized void record(String name, long value) {
+        Histogram histogram = sHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            sHistograms.put(name, histogram);
+        }
+        histogram.record(value);
+    }
+
+    /** Returns a timestamp to hand to {@link #stop(String, long)}. */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /** Records the time elapsed since {@code start}, in microseconds, and returns it. */
+    public static long stop(String name, long start) {
+        long micros = (System.nanoTime() - start) / 1000;
+        record(name, micros);
+        return micros;
+    }
+
+    public static synchronized void reset() {
+        sCounters.clear();
+        sHistograms.clear();
+    }
+
+    public static synchronized JSONObject toJson() throws JSONException {
+        JSONObject counters = new JSONObject();
+        for (Map.Entry<String, long[]> entry : sCounters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue()[0]);
+        }
+
+        JSONObject histograms = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : sHistograms.entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().toJson());
+        }
+
+        return new JSONObject()
+                .put("counters", counters)
+                .put("histograms", histograms);
+    }
+}
@@ -1,19 +1,33 @@
 package com.example.xyzreader.remote;
 
+import android.content.Context;
+import android.util.Log;
+
+import com.example.xyzreader.R;
+
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Config {
-    public static final URL BASE_URL;
+    private static final String TAG = "Config";
 
-    static {
-        URL url = null;
-        try {
-            url = new URL("https://dl.dropboxusercontent.com/u/231329/xyzreader_data/data.json" );
-        } catch (MalformedURLException ignored) {
-            // TODO: throw a real error
+    /**
+     * The feeds to sync, from the {@code feed_source_ids} and {@code feed_source_urls} resource
+     * arrays, which list them in the same order. An entry without a valid URL is left out.
+     */
+    public static List<FeedSource> getSources(Context context) {
+        String[] ids = context.getResources().getStringArray(R.array.feed_source_ids);
+        String[] urls = context.getResources().getStringArray(R.array.feed_source_urls);
+        List<FeedSource> sources = new ArrayList<FeedSource>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            try {
+                sources.add(new FeedSource(ids[i], new URL(urls[i])));
+            } catch (MalformedURLException | ArrayIndexOutOfBoundsException e) {
+                Log.e(TAG, "Skipping feed source " + ids[i], e);
+            }
         }
-
-        BASE_URL = url;
+        return sources;
     }
 }
@@ -0,0 +1,132 @@
+package com.example.xyzreader.remote;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A fetched feed: either the full article array, or a delta holding only what changed since the
+ * token the client sent. A delta is a JSON object of the form
+ * <pre>
+ *     {"since": "next token", "items": [added and updated articles], "deleted": ["id", ...]}
+ * </pre>
+ * Servers that don't know about deltas ignore the token and answer with the full array.
+ * <p>
+ * The full feed may also come in pages, newest articles first, either numbered or each linking
+ * to the next. The feed URL answers with the first page:
+ * <pre>
+ *     {"items": [articles], "page_count": 12}     the rest requested as ?page=2 and so on
+ *     {"items": [articles], "next": "relative or absolute URL"}
+ * </pre>
+ */
+public class Feed {
+    static final String PARAM_SINCE = "since";
+    static final String PARAM_PAGE = "page";
+    static final String KEY_SINCE = "since";
+    static final String KEY_ITEMS = "items";
+    static final String KEY_DELETED = "deleted";
+    static final String KEY_PAGE_COUNT = "page_count";
+    static final String KEY_NEXT = "next";
+
+    private final boolean mDelta;
+    private final JSONArray mItems;
+    private final List<String> mDeletedIds;
+    private final String mSinceToken;
+    /* The raw JSON of a full feed, for the on-disk snapshot. Paged feeds don't keep one */
+    private final byte[] mJson;
+    private final PageFetcher mPages;
+
+    private Feed(boolean delta, JSONArray items, List<String> deletedIds, String sinceToken,
+            byte[] json, PageFetcher pages) {
+        mDelta = delta;
+        mItems = items;
+        mDeletedIds = deletedIds;
+        mSinceToken = sinceToken;
+        mJson = json;
+        mPages = pages;
+    }
+
+    public static Feed full(JSONArray items) {
+        return full(items, null);
+    }
+
+    static Feed full(JSONArray items, byte[] json) {
+        return new Feed(false, items, Collections.<String>emptyList(), null, json, null);
+    }
+
+    /* The first page of a full feed, with what fetches the rest, if there are more pages */
+    static Feed paged(JSONArray firstItems, PageFetcher pages) {
+        return new Feed(false, firstItems, Collections.<String>emptyList(), null, null, pages);
+    }
+
+    /* A page has a page count or a next link, which the last page may give as JSON null */
+    static boolean isPage(JSONObject object) {
+        return !object.isNull(KEY_PAGE_COUNT) || object.has(KEY_NEXT);
+    }
+
+    /*
+     * A string member, or null when it's missing or JSON null. Android's optString() returns
+     * "null" for the latter
+     */
+    static String optString(JSONObject object, String key) {
+        return object.isNull(key) ? null : object.optString(key, null);
+    }
+
+    static Feed delta(JSONObject object) throws JSONException {
+        JSONArray items = object.optJSONArray(KEY_ITEMS);
+        JSONArray deleted = object.optJSONArray(KEY_DELETED);
+        List<String> deletedIds = new ArrayList<String>(deleted != null ? deleted.length() : 0);
+        for (int i = 0; deleted != null && i < deleted.length(); i++) {
+            deletedIds.add(deleted.getString(i));
+        }
+        return new Feed(true, items != null ? items : new JSONArray(), deletedIds,
+                optString(object, KEY_SINCE), null, null);
+    }
+
+    /** Whether this only holds changes, rather than every article there is. */
+    public boolean isDelta() {
+        return mDelta;
+    }
+
+    /**
+     * The articles, or for a delta the ones added or updated. For a paged feed these are the
+     * first page's, see {@link #nextPage()}.
+     */
+    public JSONArray getItems() {
+        return mItems;
+    }
+
+    /**
+     * Waits for the articles of the next page, in feed order, or returns null once there are no
+     * more. A page that failed for good throws, and the pages after it are dropped.
+     */
+    public JSONArray nextPage() throws IOException {
+        return mPages != null ? mPages.next() : null;
+    }
+
+    /** Stops fetching pages, for when the caller gives up on the feed. */
+    public void cancel() {
+        if (mPages != null) {
+            mPages.cancel();
+        }
+    }
+
+    /** The server ids of the articles a delta removes. */
+    public List<String> getDeletedIds() {
+        return mDeletedIds;
+    }
+
+    /** The token to ask for the next delta with, if the server gave one. */
+    public String getSinceToken() {
+        return mSinceToken;
+    }
+
+    byte[] getJson() {
+        return mJson;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.xyzreader.remote;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps a gzip-compressed copy of the last feed that was fetched and parsed successfully from each
+ * source, so the database can be re-hydrated on a cold start or when a refresh fails without any
+ * network.
+ */
+public class FeedSnapshot {
+    private static final String TAG = "FeedSnapshot";
+
+    private static final String FILE_PREFIX = "feed.";
+    private static final String FILE_SUFFIX = ".json.gz";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private FeedSnapshot() {
+    }
+
+    /**
+     * Compresses and stores the given feed as the source's snapshot. The file is written to a
+     * temporary name first and renamed into place, so a crash mid-write never leaves a truncated
+     * snapshot behind.
+     */
+    public static void write(Context context, String sourceId, byte[] feed) {
+        File file = getFile(context, sourceId);
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        OutputStream out = null;
+        try {
+            out = new GZIPOutputStream(new FileOutputStream(temp));
+            out.write(feed);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing feed snapshot", e);
+            temp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Returns the uncompressed feed from the source's last snapshot, or null if there is none.
+     */
+    public static byte[] read(Context context, String sourceId) {
+        File file = getFile(context, sourceId);
+        if (!file.exists()) {
+            return null;
+        }
+
+        InputStream in = null;
+        try {
+            in = new GZIPInputStream(new FileInputStream(file));
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length() * 4);
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) > 0) {
+                out.write(buffer, 0, bytesRead);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading feed snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    public static boolean exists(Context context, String sourceId) {
+        return getFile(context, sourceId).exists();
+    }
+
+    private static File getFile(Context context, String sourceId) {
+        return new File(context.getFilesDir(), FILE_PREFIX + sourceId + FILE_SUFFIX);
+    }
+
+    /**
+     * Deletes the snapshots of sources other than these, such as ones that are no longer synced
+     * or the single feed's from before there were several.
+     */
+    public static void retainOnly(Context context, Collection<String> sourceIds) {
+        File[] files = context.getFilesDir().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+                continue;
+            }
+            // The old "feed.json.gz" overlaps both ends, it has no source id
+            String sourceId = name.length() > FILE_PREFIX.length() + FILE_SUFFIX.length()
+                    ? name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())
+                    : null;
+            if (sourceId == null || !sourceIds.contains(sourceId)) {
+                file.delete();
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
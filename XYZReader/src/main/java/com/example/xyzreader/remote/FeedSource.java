@@ -0,0 +1,31 @@
+package com.example.xyzreader.remote;
+
+import java.net.URL;
+
+/**
+ * A publication feed that articles are synced from. Its id keeps its articles apart from those of
+ * the other feeds, whose server ids may collide, and names its sync state and snapshot, so it
+ * must never change once articles are stored under it.
+ */
+public class FeedSource {
+    private final String mId;
+    private final URL mUrl;
+
+    public FeedSource(String id, URL url) {
+        mId = id;
+        mUrl = url;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public URL getUrl() {
+        return mUrl;
+    }
+
+    @Override
+    public String toString() {
+        return mId + " (" + mUrl + ")";
+    }
+}
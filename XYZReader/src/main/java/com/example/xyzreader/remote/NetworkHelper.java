@@ -0,0 +1,186 @@
+package com.example.xyzreader.remote;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Holds the single, application-scoped {@link OkHttpClient} used for both the feed and the
+ * images, so that they share one connection pool and one dispatcher. Only the feed goes through
+ * the HTTP cache, images are cached on disk by Volley, see {@link #getImageClient()}.
+ * HTTP/2 is negotiated when the server supports it and gzip is handled transparently by OkHttp.
+ */
+public class NetworkHelper {
+    private static final String HTTP_CACHE_DIR = "http";
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long TIMEOUT_SECONDS = 15;
+
+    private static NetworkHelper sInstance;
+
+    public static synchronized NetworkHelper getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NetworkHelper(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+    private final ConnectionPool mConnectionPool;
+    private final OkHttpClient mClient;
+    private final OkHttpClient mImageClient;
+
+    /* Connections seen by the network interceptor, used to tell new connections from reused ones */
+    private final Map<Connection, Boolean> mSeenConnections = new WeakHashMap<Connection, Boolean>();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mReusedCount = new AtomicLong();
+    private final AtomicLong mWireBytes = new AtomicLong();
+
+    private NetworkHelper(Context applicationContext) {
+        mConnectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+        File cacheDir = new File(applicationContext.getCacheDir(), HTTP_CACHE_DIR);
+
+        mClient = new OkHttpClient.Builder()
+                .connectionPool(mConnectionPool)
+                .cache(new Cache(cacheDir, HTTP_CACHE_SIZE))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .addNetworkInterceptor(mConnectionStatsInterceptor)
+                .build();
+        mImageClient = mClient.newBuilder()
+                .cache(null)
+                .build();
+    }
+
+    private final Interceptor mConnectionStatsInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Connection connection = chain.connection();
+            mRequestCount.incrementAndGet();
+            if (connection != null) {
+                synchronized (mSeenConnections) {
+                    if (mSeenConnections.containsKey(connection)) {
+                        mReusedCount.incrementAndGet();
+                    } else {
+                        mSeenConnections.put(connection, Boolean.TRUE);
+                    }
+                }
+            }
+            Response response = chain.proceed(chain.request());
+
+            // This is the network response, still encoded (e.g. gzipped), whose length is often
+            // unknown: chunked, or compressed on the fly. Its bytes are counted as they're read
+            if (response.body() == null) {
+                return response;
+            }
+            return response.newBuilder().body(new CountingBody(response.body())).build();
+        }
+    };
+
+    /* A response body that adds every byte read from it to the wire byte count */
+    private class CountingBody extends ResponseBody {
+        private final ResponseBody mBody;
+        private final BufferedSource mSource;
+
+        CountingBody(ResponseBody body) {
+            mBody = body;
+            mSource = Okio.buffer(new ForwardingSource(body.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read > 0) {
+                        mWireBytes.addAndGet(read);
+                    }
+                    return read;
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mBody.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return mBody.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return mSource;
+        }
+    }
+
+    public OkHttpClient getClient() {
+        return mClient;
+    }
+
+    /**
+     * The same client without the HTTP cache, for images, which Volley keeps in a disk cache of
+     * its own. Storing them in both would take up the space twice.
+     */
+    public OkHttpClient getImageClient() {
+        return mImageClient;
+    }
+
+    /** Number of requests that went out over the network (cache hits are not counted). */
+    public long getNetworkRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /** Number of network requests that were served over an already open connection. */
+    public long getReusedConnectionCount() {
+        return mReusedCount.get();
+    }
+
+    /**
+     * Response body bytes read off the network, before any transparent decompression. Bodies
+     * that are closed before they're fully read only count what was read of them.
+     */
+    public long getWireBytes() {
+        return mWireBytes.get();
+    }
+
+    /** Total connections currently held in the pool. */
+    public int getPooledConnectionCount() {
+        return mConnectionPool.connectionCount();
+    }
+
+    /** Connections currently in the pool and waiting to be reused. */
+    public int getIdleConnectionCount() {
+        return mConnectionPool.idleConnectionCount();
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkHelper[requests=" + getNetworkRequestCount()
+                + ", reused=" + getReusedConnectionCount()
+                + ", wireBytes=" + getWireBytes()
+                + ", pooled=" + getPooledConnectionCount()
+                + ", idle=" + getIdleConnectionCount() + "]";
+    }
+}
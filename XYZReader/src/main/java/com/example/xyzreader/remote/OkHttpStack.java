@@ -0,0 +1,142 @@
+package com.example.xyzreader.remote;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Request;
+import com.android.volley.toolbox.HttpStack;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * A Volley {@link HttpStack} that performs its requests through a shared {@link OkHttpClient},
+ * so image downloads reuse the same connection pool as the feed.
+ */
+public class OkHttpStack implements HttpStack {
+    private final OkHttpClient mClient;
+
+    public OkHttpStack(OkHttpClient client) {
+        mClient = client;
+    }
+
+    @Override
+    public HttpResponse performRequest(Request<?> request, Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        int timeoutMs = request.getTimeoutMs();
+        OkHttpClient client = mClient.newBuilder()
+                .connectTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder().url(request.getUrl());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.addHeader(header.getKey(), header.getValue());
+        }
+        for (Map.Entry<String, String> header : additionalHeaders.entrySet()) {
+            builder.addHeader(header.getKey(), header.getValue());
+        }
+        setConnectionParametersForRequest(builder, request);
+
+        Response okResponse = client.newCall(builder.build()).execute();
+
+        BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(
+                parseProtocol(okResponse.protocol()), okResponse.code(), okResponse.message()));
+        response.setEntity(entityFromOkHttpResponse(okResponse));
+
+        Headers headers = okResponse.headers();
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            response.addHeader(new BasicHeader(headers.name(i), headers.value(i)));
+        }
+        return response;
+    }
+
+    private static BasicHttpEntity entityFromOkHttpResponse(Response response) {
+        BasicHttpEntity entity = new BasicHttpEntity();
+        ResponseBody body = response.body();
+
+        entity.setContent(body.byteStream());
+        entity.setContentLength(body.contentLength());
+        entity.setContentEncoding(response.header("Content-Encoding"));
+        if (body.contentType() != null) {
+            entity.setContentType(body.contentType().toString());
+        }
+        return entity;
+    }
+
+    private static void setConnectionParametersForRequest(okhttp3.Request.Builder builder,
+            Request<?> request) throws IOException, AuthFailureError {
+        switch (request.getMethod()) {
+            case Request.Method.DEPRECATED_GET_OR_POST:
+                byte[] postBody = request.getPostBody();
+                if (postBody != null) {
+                    builder.post(RequestBody.create(
+                            MediaType.parse(request.getPostBodyContentType()), postBody));
+                }
+                break;
+            case Request.Method.GET:
+                builder.get();
+                break;
+            case Request.Method.DELETE:
+                builder.delete();
+                break;
+            case Request.Method.POST:
+                builder.post(createRequestBody(request));
+                break;
+            case Request.Method.PUT:
+                builder.put(createRequestBody(request));
+                break;
+            case Request.Method.HEAD:
+                builder.head();
+                break;
+            case Request.Method.OPTIONS:
+                builder.method("OPTIONS", null);
+                break;
+            case Request.Method.TRACE:
+                builder.method("TRACE", null);
+                break;
+            case Request.Method.PATCH:
+                builder.patch(createRequestBody(request));
+                break;
+            default:
+                throw new IOException("Unknown method type " + request.getMethod());
+        }
+    }
+
+    private static RequestBody createRequestBody(Request<?> request) throws AuthFailureError {
+        byte[] body = request.getBody();
+        if (body == null) {
+            body = new byte[0];
+        }
+        return RequestBody.create(MediaType.parse(request.getBodyContentType()), body);
+    }
+
+    private static ProtocolVersion parseProtocol(Protocol protocol) {
+        switch (protocol) {
+            case HTTP_1_0:
+                return new ProtocolVersion("HTTP", 1, 0);
+            case HTTP_1_1:
+                return new ProtocolVersion("HTTP", 1, 1);
+            case SPDY_3:
+                return new ProtocolVersion("SPDY", 3, 1);
+            case HTTP_2:
+                return new ProtocolVersion("HTTP", 2, 0);
+            default:
+                throw new IllegalStateException("Unknown protocol");
+        }
+    }
+}
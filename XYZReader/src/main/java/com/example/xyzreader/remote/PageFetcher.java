@@ -0,0 +1,167 @@
+package com.example.xyzreader.remote;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.xyzreader.metrics.Metrics;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Fetches the remaining pages of a paginated feed in the background and hands them out in feed
+ * order, newest first, as each one arrives. Numbered pages are requested a few ahead of the one
+ * handed out, over the shared connection pool, so no more than a few are ever held in memory
+ * however many pages there are; linked pages can only be requested once the page before is in,
+ * so the next one is fetched while the caller writes the current one. A failed page is retried on
+ * its own, the others carry on.
+ */
+class PageFetcher {
+    private static final String TAG = "PageFetcher";
+
+    private static final int MAX_PARALLEL_PAGES = 4;
+    private static final int MAX_PAGE_ATTEMPTS = 3;
+    private static final long PAGE_BACKOFF_MILLIS = 500;
+
+    private final OkHttpClient mClient;
+    private final ExecutorService mExecutor;
+    private final ArrayDeque<Future<Page>> mPending = new ArrayDeque<Future<Page>>();
+    /* Numbered pages not requested yet, each one waiting for a page ahead of it to be handed out */
+    private final ArrayDeque<URL> mUnrequested = new ArrayDeque<URL>();
+
+    /* One page of a feed, and for linked pages where the next one is */
+    private static class Page {
+        final JSONArray mItems;
+        final URL mNext;
+
+        Page(JSONArray items, URL next) {
+            mItems = items;
+            mNext = next;
+        }
+    }
+
+    private PageFetcher(OkHttpClient client) {
+        mClient = client;
+        mExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_PAGES, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, TAG);
+            }
+        });
+    }
+
+    /** For pages that are numbered, given the URLs of every page after the first. */
+    static PageFetcher numbered(OkHttpClient client, List<URL> pageUrls) {
+        PageFetcher fetcher = new PageFetcher(client);
+        fetcher.mUnrequested.addAll(pageUrls);
+        for (int i = 0; i < MAX_PARALLEL_PAGES && !fetcher.mUnrequested.isEmpty(); i++) {
+            fetcher.submit(fetcher.mUnrequested.poll());
+        }
+        return fetcher;
+    }
+
+    /** For pages that each link to the next, given the link in the first page. */
+    static PageFetcher linked(OkHttpClient client, URL next) {
+        PageFetcher fetcher = new PageFetcher(client);
+        fetcher.submit(next);
+        return fetcher;
+    }
+
+    private void submit(final URL url) {
+        mPending.add(mExecutor.submit(new Callable<Page>() {
+            @Override
+            public Page call() throws Exception {
+                return fetchPage(url);
+            }
+        }));
+    }
+
+    private Page fetchPage(URL url) throws IOException, JSONException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                byte[] json = RemoteEndpointUtil.fetch(mClient, url);
+                Object value = RemoteEndpointUtil.parseJson(json);
+                if (!(value instanceof JSONObject)) {
+                    throw new JSONException("Expected a page at " + url);
+                }
+                Metrics.increment(Metrics.FEED_PAGES);
+                JSONObject page = (JSONObject) value;
+                String next = Feed.optString(page, Feed.KEY_NEXT);
+                return new Page(page.getJSONArray(Feed.KEY_ITEMS),
+                        next != null ? new URL(url, next) : null);
+            } catch (IOException e) {
+                if (attempt + 1 == MAX_PAGE_ATTEMPTS || !RemoteEndpointUtil.isTransient(e)) {
+                    throw e;
+                }
+                Log.w(TAG, "Error fetching " + url + ", retrying", e);
+                Metrics.increment(Metrics.FEED_PAGE_RETRIES);
+                SystemClock.sleep(PAGE_BACKOFF_MILLIS << attempt);
+            }
+        }
+    }
+
+    /**
+     * Waits for the next page in feed order and returns its items, or null after the last page.
+     * Throws if the page failed for good, after which no more pages are fetched.
+     */
+    JSONArray next() throws IOException {
+        Future<Page> future = mPending.poll();
+        if (future == null) {
+            mExecutor.shutdown();
+            return null;
+        }
+        // Keeps the window of numbered pages full while this one is waited for
+        if (!mUnrequested.isEmpty()) {
+            submit(mUnrequested.poll());
+        }
+
+        Page page;
+        try {
+            page = future.get();
+        } catch (InterruptedException e) {
+            cancel();
+            throw new InterruptedIOException("Interrupted waiting for a page");
+        } catch (ExecutionException e) {
+            cancel();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error fetching a page", cause);
+        }
+
+        if (page.mNext != null) {
+            submit(page.mNext);
+        }
+        return page.mItems;
+    }
+
+    /** Stops fetching, dropping the pages that weren't handed out. */
+    void cancel() {
+        mPending.clear();
+        mUnrequested.clear();
+        mExecutor.shutdownNow();
+    }
+}
@@ -1,14 +1,21 @@
 package com.example.xyzreader.remote;
 
+import android.content.Context;
 import android.util.Log;
 
+import com.example.xyzreader.metrics.Metrics;
+
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -20,59 +27,194 @@ public class RemoteEndpointUtil {
     private RemoteEndpointUtil() {
     }
 
-    public static JSONArray fetchJsonArray() {
-        String itemsJson = null;
+    /**
+     * Fetches what changed in a source since {@code since}: the token of its last delta, or the
+     * newest published date the client has from it. Without a token, or when the server doesn't
+     * support deltas, this is the full feed. Network failures are thrown so the caller can decide
+     * whether to retry them, see {@link #isTransient(IOException)}; a feed that doesn't parse
+     * returns null.
+     */
+    public static Feed fetchFeed(Context context, FeedSource source, String since)
+            throws IOException {
+        Feed feed = fetchFeed(NetworkHelper.getInstance(context).getClient(), source.getUrl(),
+                since);
+        if (feed != null && feed.getJson() != null) {
+            // Only keep feeds that parsed, a snapshot must always be safe to re-hydrate from
+            FeedSnapshot.write(context, source.getId(), feed.getJson());
+        }
+        return feed;
+    }
+
+    /**
+     * As {@link #fetchFeed(Context, FeedSource, String)}, from the given endpoint and without
+     * keeping a snapshot. A server that paginates may answer with the first page of the full
+     * feed, in which case the rest of the pages are fetched in the background, see
+     * {@link Feed#nextPage()}.
+     */
+    public static Feed fetchFeed(OkHttpClient client, URL url, String since) throws IOException {
+        if (since != null) {
+            try {
+                byte[] json = fetch(client, buildQueryUrl(url, Feed.PARAM_SINCE, since));
+                Object value = parseJson(json);
+                if (value instanceof JSONObject && !Feed.isPage((JSONObject) value)) {
+                    Metrics.increment(Metrics.FEED_DELTA);
+                    return Feed.delta((JSONObject) value);
+                }
+                // The server ignored the token and sent everything
+                return toFullFeed(client, url, json, value);
+            } catch (HttpStatusException e) {
+                if (!rejectsDelta(e)) {
+                    throw e;
+                }
+                Log.w(TAG, "Delta refused, fetching the full feed", e);
+            } catch (JSONException e) {
+                Log.e(TAG, "Error parsing delta JSON", e);
+                return null;
+            }
+        }
+
+        // The feed URL itself, as a server that paginates answers it with the first page; only
+        // the pages after it are asked for by number
+        byte[] json = fetch(client, url);
         try {
-            itemsJson = fetchPlainText(Config.BASE_URL);
-        } catch (IOException e) {
-            Log.e(TAG, "Error fetching items JSON", e);
+            return toFullFeed(client, url, json, parseJson(json));
+        } catch (JSONException e) {
+            Log.e(TAG, "Error parsing items JSON", e);
+            return null;
+        }
+    }
+
+    private static Feed toFullFeed(OkHttpClient client, URL url, byte[] json, Object value)
+            throws IOException, JSONException {
+        if (value instanceof JSONArray) {
+            Metrics.increment(Metrics.FEED_FULL);
+            return Feed.full((JSONArray) value, json);
+        } else if (!(value instanceof JSONObject) || !Feed.isPage((JSONObject) value)) {
+            return null;
+        }
+
+        JSONObject page = (JSONObject) value;
+        PageFetcher pages;
+        if (!page.isNull(Feed.KEY_PAGE_COUNT)) {
+            List<URL> pageUrls = new ArrayList<URL>();
+            for (int i = 2; i <= page.getInt(Feed.KEY_PAGE_COUNT); i++) {
+                pageUrls.add(buildQueryUrl(url, Feed.PARAM_PAGE, Integer.toString(i)));
+            }
+            pages = PageFetcher.numbered(client, pageUrls);
+        } else {
+            String next = Feed.optString(page, Feed.KEY_NEXT);
+            pages = next != null ? PageFetcher.linked(client, new URL(url, next)) : null;
+        }
+        Metrics.increment(Metrics.FEED_FULL);
+        Metrics.increment(Metrics.FEED_PAGES);
+        return Feed.paged(page.getJSONArray(Feed.KEY_ITEMS), pages);
+    }
+
+    static URL buildQueryUrl(URL url, String name, String value) throws IOException {
+        String query = name + "=" + URLEncoder.encode(value, "UTF-8");
+        return new URL(url.toString() + (url.getQuery() == null ? "?" : "&") + query);
+    }
+
+    /* Whether the server turned down the token itself, e.g. one that expired, rather than failed */
+    private static boolean rejectsDelta(HttpStatusException e) {
+        int code = e.getCode();
+        return code == 400 || code == 404 || code == 410 || code == 501;
+    }
+
+    /**
+     * Whether a failed fetch is worth retrying. Connection problems and server side errors are,
+     * client errors such as a 404 will fail the same way again.
+     */
+    public static boolean isTransient(IOException e) {
+        if (e instanceof HttpStatusException) {
+            int code = ((HttpStatusException) e).getCode();
+            return code >= 500 || code == 408 || code == 429;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the items of the source's last successfully fetched feed, read from the on-disk
+     * snapshot without touching the network, or null if there is no usable snapshot.
+     */
+    public static JSONArray fetchSnapshotJsonArray(Context context, FeedSource source) {
+        byte[] itemsJson = FeedSnapshot.read(context, source.getId());
+        if (itemsJson == null) {
             return null;
         }
+        return parseJsonArray(itemsJson);
+    }
 
-        // Parse JSON
+    static JSONArray parseJsonArray(byte[] itemsJson) {
+        Object val = parseJson(itemsJson);
+        if (!(val instanceof JSONArray)) {
+            Log.e(TAG, "Error parsing items JSON, expected JSONArray");
+            return null;
+        }
+        return (JSONArray) val;
+    }
+
+    /* Parses a full feed or a delta, returning null if it isn't JSON */
+    static Object parseJson(byte[] itemsJson) {
+        long start = Metrics.start();
         try {
-            JSONTokener tokener = new JSONTokener(itemsJson);
+            JSONTokener tokener = new JSONTokener(new String(itemsJson, "UTF-8" ));
             Object val = tokener.nextValue();
-            if (!(val instanceof JSONArray)) {
-                throw new JSONException("Expected JSONArray");
-            }
-            return (JSONArray) val;
-        } catch (JSONException e) {
+            long micros = Metrics.stop(Metrics.FEED_PARSE_TIME, start);
+            Log.d(TAG, "Parsed " + itemsJson.length + " bytes of items JSON in "
+                    + (micros / 1000) + "ms");
+            return val;
+        } catch (JSONException | UnsupportedEncodingException e) {
             Log.e(TAG, "Error parsing items JSON", e);
         }
 
         return null;
     }
 
-    static String fetchPlainText(URL url) throws IOException {
-        return new String(fetch(url), "UTF-8" );
+    /**
+     * Fetches an image, such as an article's thumbnail, over the same connection pool as the feed
+     * but bypassing the HTTP cache. A non-2xx status is thrown as an {@link HttpStatusException}.
+     */
+    public static byte[] fetchImage(Context context, String url) throws IOException {
+        return download(NetworkHelper.getInstance(context).getImageClient(), new URL(url));
     }
 
-    static byte[] fetch(URL url) throws IOException {
-        InputStream in = null;
+    static byte[] fetch(OkHttpClient client, URL url) throws IOException {
+        long start = Metrics.start();
+        byte[] bytes = download(client, url);
+        Metrics.stop(Metrics.FEED_FETCH_TIME, start);
+        Metrics.increment(Metrics.FEED_BYTES, bytes.length);
+        return bytes;
+    }
 
+    private static byte[] download(OkHttpClient client, URL url) throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+        Response response = client.newCall(request).execute();
         try {
-            OkHttpClient client = new OkHttpClient();
-            Request request = new Request.Builder()
-                    .url(url)
-                    .build();
-            Response response = client.newCall(request).execute();
+            if (!response.isSuccessful()) {
+                throw new HttpStatusException(response.code(), url);
+            }
             return response.body().bytes();
+        } finally {
+            response.body().close();
+        }
+    }
 
-            /*HttpURLConnection conn = client.open(url);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            in = conn.getInputStream();
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) > 0) {
-                out.write(buffer, 0, bytesRead);
-            }
+    /**
+     * Thrown when the server answers with a non-2xx status.
+     */
+    public static class HttpStatusException extends IOException {
+        private final int mCode;
 
-            return out.toByteArray();*/
-        } finally {
-            if (in != null) {
-                in.close();
-            }
+        HttpStatusException(int code, URL url) {
+            super("Unexpected response " + code + " for " + url);
+            mCode = code;
+        }
+
+        public int getCode() {
+            return mCode;
         }
     }
 }
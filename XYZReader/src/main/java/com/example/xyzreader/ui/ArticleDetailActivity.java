@@ -18,6 +18,7 @@ import android.view.ViewGroup;
 
 import com.example.xyzreader.R;
 import com.example.xyzreader.data.ArticleLoader;
+import com.example.xyzreader.metrics.FrameMonitor;
 
 /**
  * An activity representing a single Article detail screen, letting you swipe between articles.
@@ -30,6 +31,7 @@ public class ArticleDetailActivity extends AppCompatActivity
     private WindowInsetsViewPager mPager;
     private MyPagerAdapter mPagerAdapter;
     private int mSelectedItemPosition;
+    private FrameMonitor mFrameMonitor;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -49,6 +51,7 @@ public class ArticleDetailActivity extends AppCompatActivity
 
         getLoaderManager().initLoader(0, null, this);
 
+        mFrameMonitor = new FrameMonitor(this, FrameMonitor.SCREEN_DETAIL);
         mPagerAdapter = new MyPagerAdapter(getFragmentManager());
         mPager = (WindowInsetsViewPager) findViewById(R.id.pager);
         mPager.setAdapter(mPagerAdapter);
@@ -71,7 +74,7 @@ public class ArticleDetailActivity extends AppCompatActivity
 
             @Override
             public void onPageScrollStateChanged(int state) {
-
+                mFrameMonitor.setMoving(state != ViewPager.SCROLL_STATE_IDLE);
             }
         });
 
@@ -85,6 +88,18 @@ public class ArticleDetailActivity extends AppCompatActivity
         }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mFrameMonitor.attach();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mFrameMonitor.detach();
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
         return ArticleLoader.newAllArticlesInstance(this);
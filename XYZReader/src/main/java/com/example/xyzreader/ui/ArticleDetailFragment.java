@@ -7,7 +7,9 @@ import android.content.Loader;
 import android.content.res.ColorStateList;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.Typeface;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.TransitionDrawable;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.design.widget.AppBarLayout;
@@ -36,6 +38,8 @@ import com.android.volley.VolleyError;
 import com.android.volley.toolbox.ImageLoader;
 import com.example.xyzreader.R;
 import com.example.xyzreader.data.ArticleLoader;
+import com.example.xyzreader.metrics.FrameMonitor;
+import com.example.xyzreader.metrics.Metrics;
 
 /**
  * A fragment representing a single Article detail screen. This fragment is
@@ -48,7 +52,11 @@ public class ArticleDetailFragment extends Fragment implements
 
     public static final String ARG_ITEM_ID = "item_id";
 
+    private static final int LOADER_ARTICLE = 0;
+    private static final int LOADER_BODY = 1;
+
     private Cursor mCursor;
+    private Cursor mBodyCursor;
     private long mItemId;
 
     private View mRootView;
@@ -56,7 +64,7 @@ public class ArticleDetailFragment extends Fragment implements
 
     private TextView mTitleView;
     private TextView mBylineView;
-    private TextView mBodyView;
+    private BodyTextView mBodyView;
 
     private boolean mIsCard = false;
 
@@ -67,6 +75,11 @@ public class ArticleDetailFragment extends Fragment implements
     private Toolbar mToolbar;
 
     private ImageView mPhotoView;
+    /* What the list showed of the article, if it was opened from there */
+    private DetailHandoff.Entry mHandoff;
+    private boolean mHeaderShown;
+    private ImageLoader.ImageContainer mPhotoContainer;
+    private ImagePostProcessor.Task mPaletteTask;
     private FloatingActionButton mFab;
 
     /* Used in the override of the offset change listener  for collapsing toolbar */
@@ -97,6 +110,7 @@ public class ArticleDetailFragment extends Fragment implements
         if (getArguments().containsKey(ARG_ITEM_ID)) {
             mItemId = getArguments().getLong(ARG_ITEM_ID);
         }
+        mHandoff = DetailHandoff.get(mItemId);
 
         mIsCard = getResources().getBoolean(R.bool.detail_is_card);
         mThemePrimary = ContextCompat.getColor(getActivity(), R.color.theme_primary);
@@ -116,13 +130,15 @@ public class ArticleDetailFragment extends Fragment implements
         // the fragment's onCreate may cause the same LoaderManager to be dealt to multiple
         // fragments because their mIndex is -1 (haven't been added to the activity yet). Thus,
         // we do this in onActivityCreated.
-        getLoaderManager().initLoader(0, null, this);
+        getLoaderManager().initLoader(LOADER_ARTICLE, null, this);
+        // The body is stored apart and only loaded here, never with the list
+        getLoaderManager().initLoader(LOADER_BODY, null, this);
     }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
-        mRootView = inflater.inflate(R.layout.fragment_article_detail, container, false);
+        mRootView = inflateRootView(inflater, container);
 
         ViewCompat.setTransitionName(mRootView.findViewById(R.id.meta_bar), "transition appbar");
 
@@ -154,14 +170,27 @@ public class ArticleDetailFragment extends Fragment implements
         });
 
         bindViews();
+        if (mHandoff != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            // The header is already drawn from the handoff, no need to wait for the cursor
+            scheduleStartPostponedTransition(mTitleView);
+        }
         return mRootView;
     }
 
+    /* The page's views, with the body in the typeface every page shares */
+    static View inflateRootView(LayoutInflater inflater, ViewGroup container) {
+        View rootView = inflater.inflate(R.layout.fragment_article_detail, container, false);
+        BodyTextView bodyView = (BodyTextView) rootView.findViewById(R.id.article_body);
+        bodyView.setTypeface(Typefaces.get(inflater.getContext(), Typefaces.ROSARIO_REGULAR));
+        return rootView;
+    }
+
     private void bindViews() {
         if (mRootView == null) {
             return;
         }
 
+        long start = Metrics.start();
         mTitleView = (TextView) mRootView.findViewById(R.id.article_title);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             mTitleView.setTransitionName(getActivity().getString(R.string.shared_element_transition)
@@ -170,59 +199,182 @@ public class ArticleDetailFragment extends Fragment implements
 
         mBylineView = (TextView) mRootView.findViewById(R.id.article_byline);
         mBylineView.setMovementMethod(new LinkMovementMethod());
-        mBodyView = (TextView) mRootView.findViewById(R.id.article_body);
-        mBodyView.setTypeface(Typeface.createFromAsset(getResources().getAssets(), "Rosario-Regular.ttf"));
-
-        if (mCursor != null) {
-            mRootView.setAlpha(0);
-            mRootView.setVisibility(View.VISIBLE);
-            mRootView.animate().alpha(1);
-            mTitleView.setText(mCursor.getString(ArticleLoader.Query.TITLE));
+        mBodyView = (BodyTextView) mRootView.findViewById(R.id.article_body);
+
+        if (mCursor != null || mHandoff != null) {
+            String title;
+            String author;
+            long publishedDate;
+            String photoUrl;
+            if (mCursor != null) {
+                title = mCursor.getString(ArticleLoader.Query.TITLE);
+                author = mCursor.getString(ArticleLoader.Query.AUTHOR);
+                publishedDate = mCursor.getLong(ArticleLoader.Query.PUBLISHED_DATE);
+                photoUrl = mCursor.getString(ArticleLoader.Query.PHOTO_URL);
+            } else {
+                // Until the cursor is in, what the list showed
+                title = mHandoff.getTitle();
+                author = mHandoff.getAuthor();
+                publishedDate = mHandoff.getPublishedDate();
+                photoUrl = mHandoff.getPhotoUrl();
+            }
+
+            if (!mHeaderShown) {
+                mHeaderShown = true;
+                mRootView.setVisibility(View.VISIBLE);
+                if (mHandoff == null) {
+                    // Nothing to show until now, fade in
+                    mRootView.setAlpha(0);
+                    mRootView.animate().alpha(1);
+                }
+            }
+            mTitleView.setText(title);
             mBylineView.setText(Html.fromHtml(
                     DateUtils.getRelativeTimeSpanString(
-                            mCursor.getLong(ArticleLoader.Query.PUBLISHED_DATE),
+                            publishedDate,
                             System.currentTimeMillis(), DateUtils.HOUR_IN_MILLIS,
                             DateUtils.FORMAT_ABBREV_ALL).toString()
                             + " by <font color='#ffffff'>"
-                            + mCursor.getString(ArticleLoader.Query.AUTHOR)
+                            + author
                             + "</font>"));
-            mBodyView.setText(Html.fromHtml(mCursor.getString(ArticleLoader.Query.BODY)));
-            ImageLoaderHelper.getInstance(getActivity()).getImageLoader()
-                    .get(mCursor.getString(ArticleLoader.Query.PHOTO_URL), new ImageLoader.ImageListener() {
-                        @Override
-                        public void onResponse(ImageLoader.ImageContainer imageContainer, boolean b) {
-                            Bitmap bitmap = imageContainer.getBitmap();
-                            if (bitmap != null && !bitmap.isRecycled()) {
-                                mPhotoView.setImageBitmap(imageContainer.getBitmap());
-                                Palette.from(bitmap).generate(paletteListener);
-                            }
-                        }
-
-                        @Override
-                        public void onErrorResponse(VolleyError volleyError) {
-
-                        }
-                    });
+            bindBody();
+            bindPhoto(photoUrl);
 
-            mCollapsingToolbar.setTitle(mCursor.getString(ArticleLoader.Query.TITLE));
+            mCollapsingToolbar.setTitle(title);
             mCollapsingToolbar.setExpandedTitleColor(
                     ActivityCompat.getColor(getActivity(), android.R.color.transparent));
         } else {
+            mHeaderShown = false;
             mRootView.setVisibility(View.GONE);
             mTitleView.setText("N/A");
             mBylineView.setText("N/A");
-            mBodyView.setText("N/A");
+            mBodyView.setBody(mItemId, null);
         }
+        FrameMonitor.addWork(Metrics.stop(Metrics.DETAIL_BIND_TIME, start));
     }
 
-    Palette.PaletteAsyncListener paletteListener = new Palette.PaletteAsyncListener() {
-        public void onGenerated(Palette palette) {
-            applyPalette(palette);
+    private void bindBody() {
+        if (mRootView == null || (mCursor == null && mHandoff == null)) {
+            return;
+        }
+
+        // Parsed and laid out in the background, or taken from the cache
+        mBodyView = (BodyTextView) mRootView.findViewById(R.id.article_body);
+        if (mBodyCursor != null && mBodyCursor.moveToFirst()) {
+            mBodyView.setBody(mItemId, mBodyCursor.getString(ArticleLoader.BodyQuery.BODY));
+        } else {
+            mBodyView.setBody(mItemId, null);
+        }
+    }
+
+    /*
+     * Shows the thumbnail handed over by the list at once, and crossfades to the photo when it's
+     * loaded. Binding the same photo again leaves its request, or the photo shown, alone. Without
+     * a photo URL only the thumbnail is shown, the photo waits for the cursor
+     */
+    private void bindPhoto(String photoUrl) {
+        if (mPhotoContainer != null) {
+            if (mPhotoContainer.getRequestUrl().equals(photoUrl)) {
+                return;
+            }
+            // Another photo, its colors too
+            cancelImageWork();
+        }
+        Bitmap thumbnail = mHandoff != null ? mHandoff.getThumbnail() : null;
+        if (thumbnail != null && mPhotoView.getDrawable() == null) {
+            mPhotoView.setImageBitmap(thumbnail);
+            // Palette works from a scaled down copy anyway, the thumbnail's colors are the photo's
+            mPaletteTask = ImagePostProcessor.getInstance().generatePalette(
+                    thumbnail, getPalettePriority(), paletteListener);
+        }
+        if (photoUrl == null) {
+            return;
+        }
+        mPhotoContainer = ImageLoaderHelper.getInstance(getActivity()).getImageLoader()
+                .get(photoUrl, new ImageLoader.ImageListener() {
+                    @Override
+                    public void onResponse(ImageLoader.ImageContainer imageContainer,
+                            boolean isImmediate) {
+                        Bitmap bitmap = imageContainer.getBitmap();
+                        if (bitmap != null && !bitmap.isRecycled() && mRootView != null) {
+                            showPhoto(bitmap, !isImmediate);
+                            if (mPaletteTask == null) {
+                                mPaletteTask = ImagePostProcessor.getInstance().generatePalette(
+                                        bitmap, getPalettePriority(), paletteListener);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onErrorResponse(VolleyError volleyError) {
+
+                    }
+                });
+    }
+
+    /* A photo from the memory cache replaces whatever is showing, a loaded one fades in over it */
+    private void showPhoto(Bitmap photo, boolean fade) {
+        Drawable current = mPhotoView.getDrawable();
+        if (!fade || current == null) {
+            mPhotoView.setImageBitmap(photo);
+            return;
+        }
+        // The thumbnail is the photo scaled down, so both layers fill the same bounds
+        TransitionDrawable transition = new TransitionDrawable(new Drawable[]{
+                current, new BitmapDrawable(getResources(), photo)});
+        transition.setCrossFadeEnabled(true);
+        mPhotoView.setImageDrawable(transition);
+        transition.startTransition(
+                getResources().getInteger(android.R.integer.config_shortAnimTime));
+    }
+
+    ImagePostProcessor.PaletteListener paletteListener = new ImagePostProcessor.PaletteListener() {
+        public void onPaletteGenerated(Palette palette) {
+            // The page may have been swiped away while the palette was being generated
+            if (mRootView != null && isAdded()) {
+                applyPalette(palette);
+            }
         }
     };
 
+    /* The visible page gets its colors first, the pages next to it can wait */
+    private int getPalettePriority() {
+        return getUserVisibleHint()
+                ? ImagePostProcessor.PRIORITY_VISIBLE : ImagePostProcessor.PRIORITY_ADJACENT;
+    }
+
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+    public void setUserVisibleHint(boolean isVisibleToUser) {
+        super.setUserVisibleHint(isVisibleToUser);
+        if (mPaletteTask != null) {
+            mPaletteTask.setPriority(getPalettePriority());
+        }
+    }
+
+    private void cancelImageWork() {
+        if (mPhotoContainer != null) {
+            mPhotoContainer.cancelRequest();
+            mPhotoContainer = null;
+        }
+        if (mPaletteTask != null) {
+            mPaletteTask.cancel();
+            mPaletteTask = null;
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        cancelImageWork();
+        mRootView = null;
+        mHeaderShown = false;
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
+        if (id == LOADER_BODY) {
+            return ArticleLoader.newBodyInstanceForItemId(getActivity(), mItemId);
+        }
         return ArticleLoader.newInstanceForItemId(getActivity(), mItemId);
     }
 
@@ -235,11 +387,19 @@ public class ArticleDetailFragment extends Fragment implements
             return;
         }
 
+        if (cursorLoader.getId() == LOADER_BODY) {
+            mBodyCursor = cursor;
+            bindBody();
+            return;
+        }
+
         mCursor = cursor;
         if (mCursor != null && !mCursor.moveToFirst()) {
             Log.e(TAG, "Error reading item detail cursor");
             mCursor.close();
             mCursor = null;
+            // The article is gone, don't keep showing what the list had of it
+            mHandoff = null;
         }
 
         bindViews();
@@ -265,6 +425,11 @@ public class ArticleDetailFragment extends Fragment implements
 
     @Override
     public void onLoaderReset(Loader<Cursor> cursorLoader) {
+        if (cursorLoader.getId() == LOADER_BODY) {
+            mBodyCursor = null;
+            bindBody();
+            return;
+        }
         mCursor = null;
         bindViews();
     }
@@ -6,10 +6,16 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.Loader;
+import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.design.widget.AppBarLayout;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.ActivityCompat;
@@ -19,18 +25,27 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.StaggeredGridLayoutManager;
 import android.text.format.DateUtils;
+import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.xyzreader.BuildConfig;
 import com.example.xyzreader.R;
 import com.example.xyzreader.Utility;
 import com.example.xyzreader.data.ArticleLoader;
+import com.example.xyzreader.data.DatabaseMaintenance;
+import com.example.xyzreader.data.ListSnapshot;
+import com.example.xyzreader.data.SyncStatus;
 import com.example.xyzreader.data.UpdaterService;
+import com.example.xyzreader.metrics.FrameMonitor;
+import com.example.xyzreader.metrics.Metrics;
+import com.example.xyzreader.widgets.StaggeredGridRecyclerView;
 
 /**
  * An activity representing a list of Articles. This activity has different presentations for
@@ -40,10 +55,18 @@ import com.example.xyzreader.data.UpdaterService;
  */
 public class ArticleListActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor>, AppBarLayout.OnOffsetChangedListener {
+    private static final String TAG = "ArticleListActivity";
+
+    /* Only in the debug source set, so it's started by name */
+    private static final String DIAGNOSTICS_ACTIVITY =
+            "com.example.xyzreader.ui.DiagnosticsActivity";
 
     private boolean mIsAppStart;
     private SwipeRefreshLayout mSwipeRefreshLayout;
-    private RecyclerView mRecyclerView;
+    private StaggeredGridRecyclerView mRecyclerView;
+    private Adapter mAdapter;
+    private RecyclerView.RecycledViewPool mViewPool;
+    private int mViewPoolSize;
 
     private View.OnClickListener mSnackbarOnClickListener;
     private Snackbar mSnackbar;
@@ -56,24 +79,111 @@ public class ArticleListActivity extends AppCompatActivity implements
     private boolean mLogoShown;
     private static int PERCENT_TO_ANIMATE_LOGO = 20;
 
+    /* Articles synced more recently than this are shown as they are on startup */
+    private static final long SYNC_FRESHNESS_MILLIS = 15 * DateUtils.MINUTE_IN_MILLIS;
+
+    /* Whether this process has shown the list before, to tell cold starts from warm ones */
+    private static boolean sHasStarted;
+
+    private long mStartTime;
+    private boolean mIsColdStart;
+    private boolean mFirstContentShown;
+
+    /* What the grid shows until the loader delivers, on a cold start */
+    private Cursor mSnapshotCursor;
+
+    private FrameMonitor mFrameMonitor;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mStartTime = Metrics.start();
+        mIsColdStart = !sHasStarted;
+        sHasStarted = true;
+
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_article_list);
 
         mIsAppStart = true;
 
+        // The image loader spins up Volley's threads and disk cache; get that going off the main
+        // thread so it's ready by the time the first cached rows bind
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                ImageLoaderHelper.getInstance(getApplicationContext());
+            }
+        });
+
+        mFrameMonitor = new FrameMonitor(this, FrameMonitor.SCREEN_LIST);
         initLogo();
         initAppbarLayout();
         initSwipeRefresh();
         initRecyclerview();
         setSnackbarListener();
 
-        getLoaderManager().initLoader(0, null, this);
+        // A cold start draws the snapshot of the last sync and leaves opening the database until
+        // that frame is up. Otherwise cached rows are loaded right away. Either way the network
+        // sync waits for the first frame
+        mSnapshotCursor = savedInstanceState == null ? ListSnapshot.read(this) : null;
+        if (mSnapshotCursor != null) {
+            mAdapter.swapCursor(mSnapshotCursor);
+            traceFirstContent();
+            runAfterFirstFrame(new Runnable() {
+                @Override
+                public void run() {
+                    getLoaderManager().initLoader(0, null, ArticleListActivity.this);
+                }
+            });
+        } else {
+            getLoaderManager().initLoader(0, null, this);
+        }
 
         if (savedInstanceState == null) {
-            refresh();
+            runAfterFirstFrame(new Runnable() {
+                @Override
+                public void run() {
+                    // Only the detail screen uses it, have it ready before the first tap
+                    Typefaces.preload(ArticleListActivity.this, Typefaces.ROSARIO_REGULAR);
+                    preinflateViewHolders();
+                    DatabaseMaintenance.schedule(getApplicationContext());
+
+                    if (new SyncStatus(getApplicationContext()).isStale(SYNC_FRESHNESS_MILLIS)) {
+                        refresh();
+                    }
+                }
+            });
+        }
+    }
+
+    private void runAfterFirstFrame(final Runnable runnable) {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posting from pre-draw runs the work once this frame has been drawn
+                decorView.post(runnable);
+                return true;
+            }
+        });
+    }
+
+    /* Records the time to the first frame that shows articles, once per activity */
+    private void traceFirstContent() {
+        if (mFirstContentShown) {
+            return;
         }
+        mFirstContentShown = true;
+
+        runAfterFirstFrame(new Runnable() {
+            @Override
+            public void run() {
+                long micros = Metrics.stop(mIsColdStart
+                        ? Metrics.STARTUP_COLD_TIME : Metrics.STARTUP_WARM_TIME, mStartTime);
+                Log.i(TAG, (mIsColdStart ? "Cold" : "Warm") + " start, first content after "
+                        + (micros / 1000) + "ms");
+            }
+        });
     }
 
     private void initLogo() {
@@ -83,6 +193,18 @@ public class ArticleListActivity extends AppCompatActivity implements
             Animation animation = AnimationUtils.loadAnimation(this, R.anim.logo_slide_down);
             mLogo.setAnimation(animation);
         }
+
+        if (BuildConfig.DEBUG) {
+            // Hidden entry point to the performance diagnostics, which only debug builds have
+            mLogo.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    startActivity(new Intent().setClassName(ArticleListActivity.this,
+                            DIAGNOSTICS_ACTIVITY));
+                    return true;
+                }
+            });
+        }
     }
 
     private void setSnackbarListener() {
@@ -105,7 +227,12 @@ public class ArticleListActivity extends AppCompatActivity implements
     }
 
     private void initRecyclerview() {
-        mRecyclerView = (RecyclerView) findViewById(R.id.recycler_view);
+        mRecyclerView = (StaggeredGridRecyclerView) findViewById(R.id.recycler_view);
+        // The grid slides in once; refreshes animate only the items that changed
+        mRecyclerView.setAnimateFirstPopulationOnly(true);
+        setRecyclerViewPool();
+        setRecyclerAdapter();
+        setRecyclerGrid();
     }
 
     private void initAppbarLayout() {
@@ -142,11 +269,6 @@ public class ArticleListActivity extends AppCompatActivity implements
 
     @Override public void onEnterAnimationComplete() {
         mIsAppStart = false;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            if (mIsAppStart) {
-                mRecyclerView.scheduleLayoutAnimation();
-            }
-        }
         super.onEnterAnimationComplete();
     }
 
@@ -201,21 +323,52 @@ public class ArticleListActivity extends AppCompatActivity implements
     /* Creates a loader that shall get a cursor of all the found articles */
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        return ArticleLoader.newAllArticlesInstance(this);
+        return new ArticleListLoader(this);
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> cursorLoader, Cursor cursor) {
-        setRecyclerAdapter(cursor);
-        setRecyclerGrid();
+        // Swap the data under the existing adapter and layout manager, so a refresh keeps the
+        // scroll position and every item stays in the span it was laid out in
+        mAdapter.swapCursor(cursor);
+        closeSnapshot();
+
+        if (cursor != null && cursor.getCount() > 0) {
+            traceFirstContent();
+        }
+    }
+
+    private void closeSnapshot() {
+        if (mSnapshotCursor != null) {
+            mSnapshotCursor.close();
+            mSnapshotCursor = null;
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mFrameMonitor.attach();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mFrameMonitor.detach();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        closeSnapshot();
     }
 
-    private void setRecyclerAdapter(Cursor cursor) {
-        Adapter adapter = new Adapter(cursor);
+    private void setRecyclerAdapter() {
+        mAdapter = new Adapter();
 
         // This option optimizes the recyclerview, it means the items ids isn't going to change
-        adapter.setHasStableIds(true);
-        mRecyclerView.setAdapter(adapter);
+        mAdapter.setHasStableIds(true);
+        mRecyclerView.setAdapter(mAdapter);
     }
 
     private void setRecyclerGrid() {
@@ -225,18 +378,112 @@ public class ArticleListActivity extends AppCompatActivity implements
                 new StaggeredGridLayoutManager(columnCount, StaggeredGridLayoutManager.VERTICAL);
 
         mRecyclerView.setLayoutManager(sglm);
+
+        // Keep a row that scrolled off bound, so scrolling back doesn't rebind it
+        mRecyclerView.setItemViewCacheSize(columnCount);
+
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                mFrameMonitor.setMoving(newState != RecyclerView.SCROLL_STATE_IDLE);
+            }
+        });
+    }
+
+    private void setRecyclerViewPool() {
+        mViewPoolSize = getViewPoolSize(getResources());
+        mViewPool = new RecyclerView.RecycledViewPool();
+        mViewPool.setMaxRecycledViews(0, mViewPoolSize);
+        mRecyclerView.setRecycledViewPool(mViewPool);
+    }
+
+    /* About enough holders for a screen of rows and a row either side of it, in every column */
+    static int getViewPoolSize(Resources res) {
+        int columnCount = res.getInteger(R.integer.list_column_count);
+        // Rows are estimated from the thumbnail alone, at the usual aspect ratio, so the count errs
+        // high. The feed's ratios aren't bounded though: a screen of wide photos can still need
+        // more, and the rest are inflated while scrolling, as they would be without a pool
+        int thumbnailWidth = ArticleListLoader.getThumbnailWidth(res);
+        int rowHeight = Math.max(ArticleListLoader.getThumbnailHeight(thumbnailWidth,
+                ArticleListLoader.DEFAULT_ASPECT_RATIO), 1);
+        int rowCount = res.getDisplayMetrics().heightPixels / rowHeight + 2;
+        return columnCount * rowCount;
+    }
+
+    /*
+     * Inflates item views for the pool one at a time whenever the main thread is idle, so the
+     * first scroll binds views instead of inflating them
+     */
+    private void preinflateViewHolders() {
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            private int mInflated;
+
+            @Override
+            public boolean queueIdle() {
+                if (isFinishing() || isChangingConfigurations() || mInflated >= mViewPoolSize) {
+                    return false;
+                }
+                mViewPool.putRecycledView(mAdapter.createViewHolder(mRecyclerView, 0));
+                mInflated++;
+                return true;
+            }
+        });
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mRecyclerView.setAdapter(null);
+        mAdapter.swapCursor(null);
     }
 
+    /* Shared by every item view, the position is looked up from the clicked view */
+    private final View.OnClickListener mItemClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            int position = mRecyclerView.getChildAdapterPosition(view);
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+
+            if (mIsRefreshing) {
+                Toast.makeText(ArticleListActivity.this,
+                        "Please wait till loading completes", Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            mAdapter.handOff(position, (ViewHolder) mRecyclerView.getChildViewHolder(view));
+            Intent intent = new Intent(ArticleListActivity.this, ArticleDetailActivity.class)
+                    .putExtra(SELECTED_ITEM_POSITION, position);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                // Adding a transition
+                TextView title = (TextView) view.findViewById(R.id.article_title);
+                String transitionName = getString(R.string.shared_element_transition)
+                        + String.valueOf(mAdapter.getItemId(position));
+                title.setTransitionName(transitionName);
+
+                Bundle bundle = ActivityOptionsCompat.makeSceneTransitionAnimation(
+                        ArticleListActivity.this,
+                        title,
+                        transitionName).toBundle();
+                ActivityCompat.startActivity(ArticleListActivity.this, intent, bundle);
+            } else {
+                startActivity(intent);
+            }
+        }
+    };
+
     private class Adapter extends RecyclerView.Adapter<ViewHolder> {
         private Cursor mCursor;
+        private ArticleListLoader.SizedCursor mSizedCursor;
+        private final int mThumbnailWidth = ArticleListLoader.getThumbnailWidth(getResources());
 
-        public Adapter(Cursor cursor) {
+        public void swapCursor(Cursor cursor) {
             mCursor = cursor;
+            // Heights worked out for another width, e.g. before a rotation, are no use
+            mSizedCursor = cursor instanceof ArticleListLoader.SizedCursor
+                    && ((ArticleListLoader.SizedCursor) cursor).getThumbnailWidth() == mThumbnailWidth
+                    ? (ArticleListLoader.SizedCursor) cursor : null;
+            notifyDataSetChanged();
         }
 
         @Override
@@ -247,43 +494,17 @@ public class ArticleListActivity extends AppCompatActivity implements
 
         @Override
         public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            long start = Metrics.start();
             View view = getLayoutInflater().inflate(R.layout.list_item_article, parent, false);
-            final ViewHolder vh = new ViewHolder(view);
-
-            view.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View view) {
-                    if (mIsRefreshing) {
-                        Toast.makeText(ArticleListActivity.this,
-                                "Please wait till loading completes", Toast.LENGTH_SHORT).show();
-                        return;
-                    }
-
-                    Intent intent = new Intent(ArticleListActivity.this, ArticleDetailActivity.class)
-                            .putExtra(SELECTED_ITEM_POSITION, vh.getAdapterPosition());
-
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                        // Adding a transition
-                        TextView title = (TextView) view.findViewById(R.id.article_title);
-                        String transitionName = getString(R.string.shared_element_transition)
-                                + String.valueOf(getItemId(vh.getAdapterPosition()));
-                        title.setTransitionName(transitionName);
-
-                        Bundle bundle = ActivityOptionsCompat.makeSceneTransitionAnimation(
-                                ArticleListActivity.this,
-                                title,
-                                transitionName).toBundle();
-                        ActivityCompat.startActivity(ArticleListActivity.this, intent, bundle);
-                    } else {
-                        startActivity(intent);
-                    }
-                }
-            });
+            ViewHolder vh = new ViewHolder(view);
+            view.setOnClickListener(mItemClickListener);
+            FrameMonitor.addWork(Metrics.stop(Metrics.LIST_CREATE_TIME, start));
             return vh;
         }
 
         @Override
         public void onBindViewHolder(ViewHolder holder, int position) {
+            long start = Metrics.start();
             mCursor.moveToPosition(position);
             holder.titleView.setText(mCursor.getString(ArticleLoader.Query.TITLE));
             holder.subtitleView.setText(
@@ -293,15 +514,37 @@ public class ArticleListActivity extends AppCompatActivity implements
                             DateUtils.FORMAT_ABBREV_ALL).toString()
                             + " by "
                             + mCursor.getString(ArticleLoader.Query.AUTHOR));
+            // Size the thumbnail before giving it the image, so it's measured once
+            if (mSizedCursor != null) {
+                holder.thumbnailView.setFixedHeight(mSizedCursor.getThumbnailHeight(position));
+            } else {
+                holder.thumbnailView.setAspectRatio(mCursor.getFloat(ArticleLoader.Query.ASPECT_RATIO));
+            }
+            holder.previewDrawable.setPreview(mCursor.getLong(ArticleLoader.Query.PREVIEW));
             holder.thumbnailView.setImageUrl(
                     mCursor.getString(ArticleLoader.Query.THUMB_URL),
-                    ImageLoaderHelper.getInstance(ArticleListActivity.this).getImageLoader());
-            holder.thumbnailView.setAspectRatio(mCursor.getFloat(ArticleLoader.Query.ASPECT_RATIO));
+                    ImageLoaderHelper.getInstance(ArticleListActivity.this)
+                            .getThumbnailLoader(mThumbnailWidth));
+            FrameMonitor.addWork(Metrics.stop(Metrics.LIST_BIND_TIME, start));
         }
 
         @Override
         public int getItemCount() {
-            return mCursor.getCount();
+            return mCursor != null ? mCursor.getCount() : 0;
+        }
+
+        /* Passes the row and its thumbnail, if it's in, on to the detail page being opened */
+        void handOff(int position, ViewHolder holder) {
+            mCursor.moveToPosition(position);
+            Drawable thumbnail = holder.thumbnailView.getDrawable();
+            DetailHandoff.put(new DetailHandoff.Entry(
+                    mCursor.getLong(ArticleLoader.Query._ID),
+                    thumbnail instanceof BitmapDrawable
+                            ? ((BitmapDrawable) thumbnail).getBitmap() : null,
+                    mCursor.getString(ArticleLoader.Query.TITLE),
+                    mCursor.getString(ArticleLoader.Query.AUTHOR),
+                    mCursor.getLong(ArticleLoader.Query.PUBLISHED_DATE),
+                    mCursor.getString(ArticleLoader.Query.PHOTO_URL)));
         }
     }
 
@@ -309,10 +552,15 @@ public class ArticleListActivity extends AppCompatActivity implements
         public DynamicHeightNetworkImageView thumbnailView;
         public TextView titleView;
         public TextView subtitleView;
+        public PreviewDrawable previewDrawable;
 
         public ViewHolder(View view) {
             super(view);
             thumbnailView = (DynamicHeightNetworkImageView) view.findViewById(R.id.thumbnail);
+            // Shows through until the thumbnail is in
+            previewDrawable = new PreviewDrawable(
+                    view.getResources().getColor(R.color.photo_placeholder));
+            thumbnailView.setBackground(previewDrawable);
             titleView = (TextView) view.findViewById(R.id.article_title);
             subtitleView = (TextView) view.findViewById(R.id.article_subtitle);
         }
@@ -0,0 +1,84 @@
+package com.example.xyzreader.ui;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import com.example.xyzreader.R;
+import com.example.xyzreader.data.ArticleLoader;
+import com.example.xyzreader.data.ItemsContract;
+import com.example.xyzreader.metrics.Metrics;
+
+/**
+ * Loads all the articles for the list, and works out the height of every thumbnail on the
+ * loader's background thread while it's at it. The grid can then size each item the first time it
+ * measures it, instead of growing it once the aspect ratio is bound.
+ */
+public class ArticleListLoader extends ArticleLoader {
+    static final float DEFAULT_ASPECT_RATIO = 1.5f;
+
+    public ArticleListLoader(Context context) {
+        super(context, ItemsContract.Items.buildDirUri());
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+
+        long start = Metrics.start();
+        int thumbnailWidth = getThumbnailWidth(getContext().getResources());
+        int[] heights = new int[cursor.getCount()];
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            heights[i] = getThumbnailHeight(thumbnailWidth, cursor.getFloat(Query.ASPECT_RATIO));
+        }
+        cursor.moveToPosition(-1);
+        Metrics.stop(Metrics.LIST_SIZES_TIME, start);
+
+        return new SizedCursor(cursor, thumbnailWidth, heights);
+    }
+
+    /**
+     * The width thumbnails are laid out at: their own fixed width, unless the grid's columns are
+     * narrower than that.
+     */
+    public static int getThumbnailWidth(Resources res) {
+        int columnCount = res.getInteger(R.integer.list_column_count);
+        int listWidth = res.getDisplayMetrics().widthPixels
+                - 2 * res.getDimensionPixelSize(R.dimen.list_side_margin);
+        int columnWidth = listWidth / columnCount
+                - 2 * res.getDimensionPixelSize(R.dimen.list_item_margin);
+        return Math.min(res.getDimensionPixelSize(R.dimen.list_item_image_width), columnWidth);
+    }
+
+    static int getThumbnailHeight(int width, float aspectRatio) {
+        if (aspectRatio <= 0 || Float.isNaN(aspectRatio)) {
+            aspectRatio = DEFAULT_ASPECT_RATIO;
+        }
+        return (int) (width / aspectRatio);
+    }
+
+    /** The article cursor, along with the thumbnail height of each of its rows. */
+    public static class SizedCursor extends CursorWrapper {
+        private final int mThumbnailWidth;
+        private final int[] mThumbnailHeights;
+
+        SizedCursor(Cursor cursor, int thumbnailWidth, int[] thumbnailHeights) {
+            super(cursor);
+            mThumbnailWidth = thumbnailWidth;
+            mThumbnailHeights = thumbnailHeights;
+        }
+
+        /** The width the heights were worked out for. */
+        public int getThumbnailWidth() {
+            return mThumbnailWidth;
+        }
+
+        public int getThumbnailHeight(int position) {
+            return mThumbnailHeights[position];
+        }
+    }
+}
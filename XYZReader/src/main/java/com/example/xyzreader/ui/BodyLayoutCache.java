@@ -0,0 +1,146 @@
+package com.example.xyzreader.ui;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.util.LruCache;
+import android.text.Html;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import com.example.xyzreader.MemoryBudget;
+import com.example.xyzreader.metrics.Metrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Lays out article bodies on a background thread, parsing the HTML and breaking the text into
+ * lines with a {@link StaticLayout}, and keeps the layouts by article, width and text size.
+ * Showing an article again, or at a width it was shown at before, skips both steps. The layouts
+ * are kept within their share of the {@link MemoryBudget}.
+ */
+public class BodyLayoutCache {
+    private static final String MEMORY_CACHE_NAME = "body_layouts";
+    private static final float MEMORY_CACHE_SHARE = 0.25f;
+
+    /* Rough heap cost of a laid out body: its characters with their spans, and each line */
+    private static final int BYTES_PER_CHAR = 4;
+    private static final int BYTES_PER_LINE = 32;
+
+    private static BodyLayoutCache sInstance;
+
+    public static synchronized BodyLayoutCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BodyLayoutCache(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+    public interface Listener {
+        void onLayoutReady(Layout layout);
+    }
+
+    private final LruCache<String, Layout> mLayouts;
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private BodyLayoutCache(Context applicationContext) {
+        MemoryBudget budget = MemoryBudget.getInstance(applicationContext);
+        mLayouts = new LruCache<String, Layout>((int) budget.getBudgetBytes(MEMORY_CACHE_SHARE)) {
+            @Override
+            protected int sizeOf(String key, Layout value) {
+                return value.getText().length() * BYTES_PER_CHAR
+                        + value.getLineCount() * BYTES_PER_LINE;
+            }
+        };
+        budget.register(MEMORY_CACHE_NAME, MEMORY_CACHE_SHARE, new MemoryBudget.Cache() {
+            @Override
+            public long getSizeBytes() {
+                return mLayouts.size();
+            }
+
+            @Override
+            public void trimToSize(long maxBytes) {
+                mLayouts.trimToSize((int) maxBytes);
+            }
+        });
+
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "BodyLayoutCache");
+            }
+        });
+    }
+
+    /* The body is part of the key, an article updated by a sync is laid out again */
+    private static String getKey(long articleId, String html, int width, TextPaint paint) {
+        return articleId + "/" + html.hashCode() + "/" + width + "/" + paint.getTextSize();
+    }
+
+    /** The layout of this body at this width, if it's been prepared before. */
+    public Layout get(long articleId, String html, int width, TextPaint paint) {
+        return mLayouts.get(getKey(articleId, html, width, paint));
+    }
+
+    /**
+     * Lays the body out in the background and hands the layout to the listener on the main
+     * thread, unless the returned task was cancelled in the meantime. Each layout gets its own
+     * copy of the paint, so its link color can be changed later.
+     */
+    public Task prepare(final long articleId, final String html, final int width,
+            TextPaint paint, final float spacingMult, final float spacingAdd,
+            final Listener listener) {
+        final TextPaint paintCopy = new TextPaint();
+        paintCopy.set(paint);
+        final Task task = new Task();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (task.mCancelled) {
+                    return;
+                }
+                long start = Metrics.start();
+                final Layout layout = build(html, width, paintCopy, spacingMult, spacingAdd);
+                Metrics.stop(Metrics.DETAIL_BODY_LAYOUT_TIME, start);
+                mLayouts.put(getKey(articleId, html, width, paintCopy), layout);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!task.mCancelled) {
+                            listener.onLayoutReady(layout);
+                        }
+                    }
+                });
+            }
+        });
+        return task;
+    }
+
+    /** Parses and lays out a body, as {@link #prepare} does. Any thread. */
+    static Layout build(String html, int width, TextPaint paint, float spacingMult,
+            float spacingAdd) {
+        return new StaticLayout(Html.fromHtml(html), paint, width, Layout.Alignment.ALIGN_NORMAL,
+                spacingMult, spacingAdd, true);
+    }
+
+    /** A pending layout. A cancelled one never reaches its listener. */
+    public static class Task {
+        private volatile boolean mCancelled;
+
+        public void cancel() {
+            mCancelled = true;
+        }
+    }
+}
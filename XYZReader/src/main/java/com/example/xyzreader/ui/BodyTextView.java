@@ -0,0 +1,209 @@
+package com.example.xyzreader.ui;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.widget.TextView;
+
+/**
+ * Shows an article body from a {@link Layout} prepared in the background by
+ * {@link BodyLayoutCache}, so the body is never parsed or broken into lines on the main thread.
+ * Until the layout is ready the view is empty and only as tall as its padding. Takes the text
+ * size, color, link color and line spacing attributes of a TextView; the typeface is set in code.
+ * Accessibility services are given the laid out text, as they would be by a TextView.
+ */
+public class BodyTextView extends View {
+    /* In ascending order of attribute id, as obtainStyledAttributes() requires */
+    private static final int[] ATTRS = {
+            android.R.attr.textSize,
+            android.R.attr.textColor,
+            android.R.attr.textColorLink,
+            android.R.attr.lineSpacingExtra,
+            android.R.attr.lineSpacingMultiplier,
+    };
+    private static final int DEFAULT_TEXT_SIZE_SP = 16;
+
+    private final TextPaint mPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private float mSpacingAdd;
+    private float mSpacingMult = 1;
+
+    private long mArticleId;
+    private String mHtml;
+    private Layout mLayout;
+    private BodyLayoutCache.Task mTask;
+
+    public BodyTextView(Context context) {
+        this(context, null);
+    }
+
+    public BodyTextView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public BodyTextView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        TypedArray a = context.obtainStyledAttributes(attrs, ATTRS, defStyle, 0);
+        mPaint.setTextSize(a.getDimensionPixelSize(0, (int) TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_SP, DEFAULT_TEXT_SIZE_SP,
+                context.getResources().getDisplayMetrics())));
+        ColorStateList textColor = a.getColorStateList(1);
+        mPaint.setColor(textColor != null ? textColor.getDefaultColor() : Color.BLACK);
+        ColorStateList linkColor = a.getColorStateList(2);
+        mPaint.linkColor = linkColor != null ? linkColor.getDefaultColor() : Color.BLUE;
+        mSpacingAdd = a.getDimensionPixelSize(3, 0);
+        mSpacingMult = a.getFloat(4, 1);
+        a.recycle();
+        mPaint.density = context.getResources().getDisplayMetrics().density;
+
+        if (ViewCompat.getImportantForAccessibility(this)
+                == ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_AUTO) {
+            ViewCompat.setImportantForAccessibility(this,
+                    ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_YES);
+        }
+    }
+
+    public void setTypeface(Typeface typeface) {
+        mPaint.setTypeface(typeface);
+    }
+
+    public void setLinkTextColor(int color) {
+        mPaint.linkColor = color;
+        if (mLayout != null) {
+            // The layout has its own copy of the paint, see BodyLayoutCache.prepare()
+            mLayout.getPaint().linkColor = color;
+            invalidate();
+        }
+    }
+
+    /** Shows this article's body, or nothing for a null body. */
+    public void setBody(long articleId, String html) {
+        if (articleId == mArticleId && html != null && html.equals(mHtml)) {
+            return;
+        }
+        mArticleId = articleId;
+        mHtml = html;
+        cancelTask();
+        setLayout(null);
+        updateLayout();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (w != oldw) {
+            updateLayout();
+        }
+    }
+
+    /* Shows the layout for the current width, from the cache or once it's been prepared */
+    private void updateLayout() {
+        final int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        if (mHtml == null || width <= 0 || (mLayout != null && mLayout.getWidth() == width)) {
+            return;
+        }
+
+        BodyLayoutCache cache = BodyLayoutCache.getInstance(getContext());
+        Layout layout = cache.get(mArticleId, mHtml, width, mPaint);
+        if (layout != null) {
+            setLayout(layout);
+            return;
+        }
+        cancelTask();
+        mTask = cache.prepare(mArticleId, mHtml, width, mPaint, mSpacingMult, mSpacingAdd,
+                new BodyLayoutCache.Listener() {
+                    @Override
+                    public void onLayoutReady(Layout layout) {
+                        mTask = null;
+                        setLayout(layout);
+                    }
+                });
+    }
+
+    private void setLayout(Layout layout) {
+        if (layout != null) {
+            layout.getPaint().linkColor = mPaint.linkColor;
+        }
+        mLayout = layout;
+        requestLayout();
+        invalidate();
+        sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+    }
+
+    /** The body as laid out, or null until its layout is ready. */
+    public CharSequence getText() {
+        return mLayout != null ? mLayout.getText() : null;
+    }
+
+    @Override
+    public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        info.setClassName(TextView.class.getName());
+        info.setText(getText());
+    }
+
+    @Override
+    public void onPopulateAccessibilityEvent(AccessibilityEvent event) {
+        super.onPopulateAccessibilityEvent(event);
+        CharSequence text = getText();
+        if (text != null) {
+            event.getText().add(text);
+        }
+    }
+
+    @Override
+    public void onInitializeAccessibilityEvent(AccessibilityEvent event) {
+        super.onInitializeAccessibilityEvent(event);
+        event.setClassName(TextView.class.getName());
+    }
+
+    private void cancelTask() {
+        if (mTask != null) {
+            mTask.cancel();
+            mTask = null;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelTask();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // Picks up a layout that was cancelled while detached
+        updateLayout();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = getPaddingTop() + getPaddingBottom()
+                + (mLayout != null ? mLayout.getHeight() : 0);
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mLayout == null) {
+            return;
+        }
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        mLayout.draw(canvas);
+        canvas.restore();
+    }
+}
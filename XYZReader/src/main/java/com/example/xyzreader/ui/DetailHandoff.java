@@ -0,0 +1,78 @@
+package com.example.xyzreader.ui;
+
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+import com.example.xyzreader.metrics.Metrics;
+
+/**
+ * Hands what the list already shows of an article, its decoded thumbnail and the row's columns,
+ * to the detail page it opens. The page draws its header and hero image from them on its first
+ * frame, so the enter transition doesn't wait for the article's cursor or the full-size photo.
+ * In-process only and holds the last few articles opened; the thumbnail is the same bitmap the
+ * image cache holds, so an entry costs next to nothing.
+ */
+public class DetailHandoff {
+    private static final int MAX_ENTRIES = 4;
+
+    private static final LruCache<Long, Entry> sEntries = new LruCache<Long, Entry>(MAX_ENTRIES);
+
+    private DetailHandoff() {
+    }
+
+    /** An opened article as the list showed it. */
+    public static class Entry {
+        private final long mId;
+        private final Bitmap mThumbnail;
+        private final String mTitle;
+        private final String mAuthor;
+        private final long mPublishedDate;
+        private final String mPhotoUrl;
+
+        public Entry(long id, Bitmap thumbnail, String title, String author, long publishedDate,
+                String photoUrl) {
+            mId = id;
+            mThumbnail = thumbnail;
+            mTitle = title;
+            mAuthor = author;
+            mPublishedDate = publishedDate;
+            mPhotoUrl = photoUrl;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        /** The thumbnail, or null if it wasn't loaded when the article was opened. */
+        public Bitmap getThumbnail() {
+            return mThumbnail != null && !mThumbnail.isRecycled() ? mThumbnail : null;
+        }
+
+        public String getTitle() {
+            return mTitle;
+        }
+
+        public String getAuthor() {
+            return mAuthor;
+        }
+
+        public long getPublishedDate() {
+            return mPublishedDate;
+        }
+
+        public String getPhotoUrl() {
+            return mPhotoUrl;
+        }
+    }
+
+    public static void put(Entry entry) {
+        sEntries.put(entry.getId(), entry);
+    }
+
+    /** The entry of an article opened from the list, or null if it was opened some other way. */
+    public static Entry get(long id) {
+        Entry entry = sEntries.get(id);
+        Metrics.increment(entry != null ? Metrics.DETAIL_HANDOFF_HIT : Metrics.DETAIL_HANDOFF_MISS);
+        return entry;
+    }
+}
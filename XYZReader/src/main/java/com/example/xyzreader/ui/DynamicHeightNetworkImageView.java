@@ -1,12 +1,15 @@
 package com.example.xyzreader.ui;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 
 import com.android.volley.toolbox.NetworkImageView;
 
 public class DynamicHeightNetworkImageView extends NetworkImageView {
     private float mAspectRatio = 1.5f;
+    private int mFixedHeight;
+    private boolean mIgnoreLayoutRequests;
 
     public DynamicHeightNetworkImageView(Context context) {
         super(context);
@@ -21,14 +24,46 @@ public class DynamicHeightNetworkImageView extends NetworkImageView {
     }
 
     public void setAspectRatio(float aspectRatio) {
+        if (mFixedHeight == 0 && aspectRatio == mAspectRatio) {
+            return;
+        }
         mAspectRatio = aspectRatio;
+        mFixedHeight = 0;
         requestLayout();
     }
 
+    /**
+     * Sets a height worked out ahead of time, which wins over the aspect ratio. Bind it before the
+     * image so the view is measured once, at its final size.
+     */
+    public void setFixedHeight(int height) {
+        if (height == mFixedHeight) {
+            return;
+        }
+        mFixedHeight = height;
+        requestLayout();
+    }
+
+    @Override
+    public void setImageDrawable(Drawable drawable) {
+        // With a fixed height the drawable can't change the view's size, so don't lay out again
+        mIgnoreLayoutRequests = mFixedHeight > 0;
+        super.setImageDrawable(drawable);
+        mIgnoreLayoutRequests = false;
+    }
+
+    @Override
+    public void requestLayout() {
+        if (!mIgnoreLayoutRequests) {
+            super.requestLayout();
+        }
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
         int measuredWidth = getMeasuredWidth();
-        setMeasuredDimension(measuredWidth, (int) (measuredWidth / mAspectRatio));
+        int height = mFixedHeight > 0 ? mFixedHeight : (int) (measuredWidth / mAspectRatio);
+        setMeasuredDimension(measuredWidth, height);
     }
 }
@@ -2,16 +2,38 @@ package com.example.xyzreader.ui;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.Process;
 import android.support.v4.util.LruCache;
+import android.util.SparseArray;
 
 import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
 import com.android.volley.toolbox.ImageLoader;
-import com.android.volley.toolbox.Volley;
+import com.example.xyzreader.MemoryBudget;
+import com.example.xyzreader.metrics.Metrics;
+import com.example.xyzreader.remote.NetworkHelper;
+import com.example.xyzreader.remote.OkHttpStack;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class ImageLoaderHelper {
+    /* Originals as downloaded, and the grid's thumbnail variants, each within its own budget */
+    private static final String ORIGINALS_CACHE_DIR = "volley";
+    private static final int ORIGINALS_CACHE_BYTES = 8 * 1024 * 1024;
+    private static final String VARIANTS_CACHE_DIR = "thumbnails";
+    private static final int VARIANTS_CACHE_BYTES = 4 * 1024 * 1024;
+
+    /* Decoded bitmaps, see MemoryBudget */
+    private static final String MEMORY_CACHE_NAME = "images";
+    private static final float MEMORY_CACHE_SHARE = 0.5f;
+
     private static ImageLoaderHelper sInstance;
 
-    public static ImageLoaderHelper getInstance(Context context) {
+    public static synchronized ImageLoaderHelper getInstance(Context context) {
         if (sInstance == null) {
             sInstance = new ImageLoaderHelper(context.getApplicationContext());
         }
@@ -19,12 +41,45 @@ public class ImageLoaderHelper {
         return sInstance;
     }
 
-    private final LruCache<String, Bitmap> mImageCache = new LruCache<String, Bitmap>(20);
+    private final LruCache<String, Bitmap> mImageCache;
+    private final RequestQueue mQueue;
+    private final ImageLoader.ImageCache mMemoryCache;
     private ImageLoader mImageLoader;
 
+    private final DiskBasedCache mVariants;
+    private final ExecutorService mVariantExecutor;
+    private final SparseArray<ThumbnailLoader> mThumbnailLoaders =
+            new SparseArray<ThumbnailLoader>();
+
     private ImageLoaderHelper(Context applicationContext) {
-        RequestQueue queue = Volley.newRequestQueue(applicationContext);
-        ImageLoader.ImageCache imageCache = new ImageLoader.ImageCache() {
+        // Images go through the same connection pool as the feed, but only Volley caches them
+        mQueue = new RequestQueue(
+                new DiskBasedCache(new File(applicationContext.getCacheDir(), ORIGINALS_CACHE_DIR),
+                        ORIGINALS_CACHE_BYTES),
+                new BasicNetwork(new OkHttpStack(
+                        NetworkHelper.getInstance(applicationContext).getImageClient())));
+        mQueue.start();
+
+        MemoryBudget budget = MemoryBudget.getInstance(applicationContext);
+        mImageCache = new LruCache<String, Bitmap>(
+                (int) budget.getBudgetBytes(MEMORY_CACHE_SHARE)) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        budget.register(MEMORY_CACHE_NAME, MEMORY_CACHE_SHARE, new MemoryBudget.Cache() {
+            @Override
+            public long getSizeBytes() {
+                return mImageCache.size();
+            }
+
+            @Override
+            public void trimToSize(long maxBytes) {
+                mImageCache.trimToSize((int) maxBytes);
+            }
+        });
+        mMemoryCache = new ImageLoader.ImageCache() {
             @Override
             public void putBitmap(String key, Bitmap value) {
                 mImageCache.put(key, value);
@@ -32,13 +87,56 @@ public class ImageLoaderHelper {
 
             @Override
             public Bitmap getBitmap(String key) {
-                return mImageCache.get(key);
+                Bitmap bitmap = mImageCache.get(key);
+                Metrics.increment(bitmap != null ? Metrics.IMAGE_CACHE_HIT : Metrics.IMAGE_CACHE_MISS);
+                return bitmap;
             }
         };
-        mImageLoader = new ImageLoader(queue, imageCache);
+        mImageLoader = new ImageLoader(mQueue, mMemoryCache);
+
+        mVariants = new DiskBasedCache(
+                new File(applicationContext.getCacheDir(), VARIANTS_CACHE_DIR), VARIANTS_CACHE_BYTES);
+        mVariantExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "ThumbnailVariants");
+            }
+        });
+        // Reads the cache index before any lookup, which queues up behind it
+        mVariantExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mVariants.initialize();
+            }
+        });
     }
 
     public ImageLoader getImageLoader() {
         return mImageLoader;
     }
+
+    /**
+     * The loader for grid thumbnails laid out at this width, see
+     * {@link ArticleListLoader#getThumbnailWidth(android.content.res.Resources)}.
+     */
+    public ThumbnailLoader getThumbnailLoader(int width) {
+        ThumbnailLoader loader = mThumbnailLoaders.get(width);
+        if (loader == null) {
+            loader = new ThumbnailLoader(mQueue, mMemoryCache, mVariants, mVariantExecutor, width);
+            mThumbnailLoaders.put(width, loader);
+        }
+        return loader;
+    }
+
+    /** Drops an image from the disk caches, for articles that are no longer stored. */
+    public void evictFromDiskCache(String url) {
+        mQueue.getCache().remove(url);
+        mVariants.remove(url);
+    }
 }
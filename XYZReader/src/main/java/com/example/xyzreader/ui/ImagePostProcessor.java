@@ -0,0 +1,160 @@
+package com.example.xyzreader.ui;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v7.graphics.Palette;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs image post-processing, such as {@link Palette} generation, on a dedicated background
+ * thread instead of AsyncTask's shared executor. Tasks run in priority order, the visible page
+ * first, and only a few are kept waiting: when the queue is full the least important task is
+ * dropped. Every task can be cancelled by its owner, and a cancelled task never delivers.
+ */
+public class ImagePostProcessor {
+    /** For the page the user is looking at. */
+    public static final int PRIORITY_VISIBLE = 0;
+    /** For pages next to it, which the user is likely to swipe to. */
+    public static final int PRIORITY_ADJACENT = 1;
+
+    private static final int MAX_QUEUED_TASKS = 4;
+
+    private static ImagePostProcessor sInstance;
+
+    public static synchronized ImagePostProcessor getInstance() {
+        if (sInstance == null) {
+            sInstance = new ImagePostProcessor();
+        }
+
+        return sInstance;
+    }
+
+    public interface PaletteListener {
+        void onPaletteGenerated(Palette palette);
+    }
+
+    private final PriorityBlockingQueue<Runnable> mQueue = new PriorityBlockingQueue<Runnable>();
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private ImagePostProcessor() {
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, mQueue, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "ImagePostProcessor");
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Generates a palette for the bitmap in the background and hands it to the listener on the
+     * main thread, unless the returned task was cancelled in the meantime.
+     */
+    public Task generatePalette(final Bitmap bitmap, int priority, final PaletteListener listener) {
+        Task task = new Task(priority, mSequence.getAndIncrement()) {
+            @Override
+            void process() {
+                final Palette palette = Palette.from(bitmap).generate();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isCancelled()) {
+                            listener.onPaletteGenerated(palette);
+                        }
+                    }
+                });
+            }
+        };
+        enqueue(task);
+        return task;
+    }
+
+    private synchronized void enqueue(Task task) {
+        if (mQueue.size() >= MAX_QUEUED_TASKS) {
+            Task leastImportant = task;
+            for (Runnable queued : mQueue) {
+                if (((Task) queued).compareTo(leastImportant) > 0) {
+                    leastImportant = (Task) queued;
+                }
+            }
+            leastImportant.cancel();
+            if (leastImportant == task) {
+                return;
+            }
+        }
+        mExecutor.execute(task);
+    }
+
+    private synchronized void reprioritize(Task task, int priority) {
+        // The queue only orders on insertion, so move the task to its new place
+        if (mQueue.remove(task)) {
+            task.mPriority = priority;
+            mQueue.offer(task);
+        } else {
+            task.mPriority = priority;
+        }
+    }
+
+    /**
+     * A unit of work on the post-processing thread. Lower priorities run first, and tasks of the
+     * same priority run in the order they were submitted.
+     */
+    public abstract class Task implements Runnable, Comparable<Task> {
+        private volatile int mPriority;
+        private final long mSequence;
+        private volatile boolean mCancelled;
+
+        Task(int priority, long sequence) {
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        abstract void process();
+
+        @Override
+        public final void run() {
+            if (!mCancelled) {
+                process();
+            }
+        }
+
+        /** Drops the task; if it already ran, its result won't be delivered. */
+        public void cancel() {
+            mCancelled = true;
+            mQueue.remove(this);
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public void setPriority(int priority) {
+            if (priority != mPriority) {
+                reprioritize(this, priority);
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
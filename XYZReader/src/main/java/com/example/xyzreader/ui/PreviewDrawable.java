@@ -0,0 +1,68 @@
+package com.example.xyzreader.ui;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+import com.example.xyzreader.data.ThumbnailPreview;
+
+/**
+ * Draws an article's {@link ThumbnailPreview} stretched over its bounds, the four colors blended
+ * by bitmap filtering, or a flat placeholder color for an article without one. Changing the
+ * preview only rewrites the pixels of a 2x2 bitmap, so it's cheap enough for every bind.
+ */
+public class PreviewDrawable extends Drawable {
+    private final Bitmap mPixels = Bitmap.createBitmap(2, 2, Bitmap.Config.ARGB_8888);
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mPlaceholderPaint = new Paint();
+    private long mPreview = ThumbnailPreview.NONE;
+
+    public PreviewDrawable(int placeholderColor) {
+        mPlaceholderPaint.setColor(placeholderColor);
+    }
+
+    public void setPreview(long preview) {
+        if (preview == mPreview) {
+            return;
+        }
+        mPreview = preview;
+        if (preview != ThumbnailPreview.NONE) {
+            for (int quadrant = 0; quadrant < 4; quadrant++) {
+                mPixels.setPixel(quadrant % 2, quadrant / 2,
+                        ThumbnailPreview.getColor(preview, quadrant));
+            }
+        }
+        invalidateSelf();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mPreview == ThumbnailPreview.NONE) {
+            canvas.drawRect(getBounds(), mPlaceholderPaint);
+        } else {
+            canvas.drawBitmap(mPixels, null, getBounds(), mBitmapPaint);
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mBitmapPaint.setAlpha(alpha);
+        mPlaceholderPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mBitmapPaint.setColorFilter(colorFilter);
+        mPlaceholderPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return mBitmapPaint.getAlpha() == 255 ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+    }
+}
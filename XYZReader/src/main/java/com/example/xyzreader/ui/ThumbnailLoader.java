@@ -0,0 +1,188 @@
+package com.example.xyzreader.ui;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.android.volley.Cache;
+import com.android.volley.RequestQueue;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.ImageLoader;
+import com.example.xyzreader.metrics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link ImageLoader} for the grid's thumbnails, which keeps a variant of every thumbnail in a
+ * disk cache of its own, already scaled to the column width and re-encoded as WebP. After a
+ * memory cache miss the small variant is decoded as is, instead of the original being downloaded
+ * or read from Volley's cache and resampled. Only when there's no variant yet does the request go
+ * through Volley, which decodes the original straight down to the column width; the result is
+ * then encoded and stored for next time. Variants are keyed by URL alone, with the width they were
+ * scaled to stored in the entry, so evicting a URL drops its variant whatever its width.
+ */
+public class ThumbnailLoader extends ImageLoader {
+    private static final int VARIANT_QUALITY = 80;
+    private static final String HEADER_WIDTH = "X-Variant-Width";
+
+    private final ImageCache mMemoryCache;
+    private final DiskBasedCache mVariants;
+    private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final int mWidth;
+
+    /**
+     * @param variants the disk cache for variants, initialized on {@code executor}
+     * @param executor a single background thread for reading, decoding and writing variants
+     */
+    ThumbnailLoader(RequestQueue queue, ImageCache memoryCache, DiskBasedCache variants,
+            Executor executor, int width) {
+        super(queue, memoryCache);
+        mMemoryCache = memoryCache;
+        mVariants = variants;
+        mExecutor = executor;
+        mWidth = width;
+    }
+
+    /* The same key Volley's ImageLoader caches a bitmap of this width under */
+    static String getCacheKey(String url, int width) {
+        return "#W" + width + "#H" + 0 + url;
+    }
+
+    /**
+     * Loads the thumbnail at the column width, whatever size is asked for. Must be called on the
+     * main thread, as for any {@link ImageLoader}.
+     */
+    @Override
+    public ImageContainer get(String requestUrl, ImageListener listener, int maxWidth,
+            int maxHeight) {
+        Bitmap cached = mMemoryCache.getBitmap(getCacheKey(requestUrl, mWidth));
+        if (cached != null) {
+            ImageContainer container = new ImageContainer(cached, requestUrl, null, listener);
+            listener.onResponse(container, true);
+            return container;
+        }
+
+        VariantContainer container = new VariantContainer(requestUrl, listener);
+        // As with a miss in ImageLoader, let the view show its default image in the meantime
+        listener.onResponse(container, true);
+        mExecutor.execute(container);
+        return container;
+    }
+
+    /** Encodes a thumbnail as it's stored in the variant cache. */
+    static byte[] encodeVariant(Bitmap bitmap) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bitmap.getByteCount() / 8);
+        bitmap.compress(Bitmap.CompressFormat.WEBP, VARIANT_QUALITY, out);
+        return out.toByteArray();
+    }
+
+    private void putVariant(final String url, final Bitmap bitmap) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Cache.Entry entry = new Cache.Entry();
+                entry.data = encodeVariant(bitmap);
+                // Variants never go stale, the original they were made from doesn't change
+                entry.ttl = Long.MAX_VALUE;
+                entry.softTtl = Long.MAX_VALUE;
+                entry.responseHeaders = Collections.singletonMap(HEADER_WIDTH,
+                        Integer.toString(mWidth));
+                mVariants.put(url, entry);
+            }
+        });
+    }
+
+    /* Whether a cached variant was scaled to this loader's width, rather than another column's */
+    private boolean hasWidth(Cache.Entry entry) {
+        return entry.responseHeaders != null
+                && Integer.toString(mWidth).equals(entry.responseHeaders.get(HEADER_WIDTH));
+    }
+
+    /**
+     * A pending load: looks for a variant on the background thread, and falls back to Volley on
+     * the main thread. Cancelling it stops either from delivering.
+     */
+    private class VariantContainer extends ImageContainer implements Runnable {
+        private final String mUrl;
+        private final ImageListener mListener;
+        private ImageContainer mDelegate;
+        private volatile boolean mCancelled;
+
+        VariantContainer(String url, ImageListener listener) {
+            super(null, url, null, listener);
+            mUrl = url;
+            mListener = listener;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+
+            long start = Metrics.start();
+            Cache.Entry entry = mVariants.get(mUrl);
+            final Bitmap bitmap = entry != null && hasWidth(entry)
+                    ? BitmapFactory.decodeByteArray(entry.data, 0, entry.data.length) : null;
+            if (bitmap != null) {
+                Metrics.stop(Metrics.IMAGE_VARIANT_DECODE_TIME, start);
+            }
+            Metrics.increment(bitmap != null
+                    ? Metrics.IMAGE_VARIANT_HIT : Metrics.IMAGE_VARIANT_MISS);
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCancelled) {
+                        return;
+                    }
+                    if (bitmap != null) {
+                        mMemoryCache.putBitmap(getCacheKey(mUrl, mWidth), bitmap);
+                        deliver(bitmap);
+                    } else {
+                        loadOriginal();
+                    }
+                }
+            });
+        }
+
+        private void loadOriginal() {
+            mDelegate = ThumbnailLoader.super.get(mUrl, new ImageListener() {
+                @Override
+                public void onResponse(ImageContainer response, boolean isImmediate) {
+                    Bitmap bitmap = response.getBitmap();
+                    if (bitmap != null && !mCancelled) {
+                        if (!isImmediate) {
+                            putVariant(mUrl, bitmap);
+                        }
+                        deliver(bitmap);
+                    }
+                }
+
+                @Override
+                public void onErrorResponse(VolleyError error) {
+                    if (!mCancelled) {
+                        mListener.onErrorResponse(error);
+                    }
+                }
+            }, mWidth, 0);
+        }
+
+        private void deliver(Bitmap bitmap) {
+            mListener.onResponse(new ImageContainer(bitmap, mUrl, null, mListener), false);
+        }
+
+        @Override
+        public void cancelRequest() {
+            mCancelled = true;
+            if (mDelegate != null) {
+                mDelegate.cancelRequest();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.xyzreader.ui;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.AsyncTask;
+import android.support.v4.util.SimpleArrayMap;
+
+import com.example.xyzreader.metrics.Metrics;
+
+/**
+ * Process-wide cache of the typefaces loaded from assets. {@link Typeface#createFromAsset} reads
+ * and parses the font file on every call, and leaks native memory on older platform versions,
+ * so each font is created once here and the instance shared by every view.
+ */
+public class Typefaces {
+    public static final String ROSARIO_REGULAR = "Rosario-Regular.ttf";
+
+    private static final SimpleArrayMap<String, Typeface> sCache =
+            new SimpleArrayMap<String, Typeface>();
+
+    private Typefaces() {
+    }
+
+    public static Typeface get(Context context, String asset) {
+        synchronized (sCache) {
+            Typeface typeface = sCache.get(asset);
+            if (typeface == null) {
+                typeface = Typeface.createFromAsset(context.getApplicationContext().getAssets(), asset);
+                sCache.put(asset, typeface);
+                Metrics.increment(Metrics.TYPEFACE_LOADS);
+            }
+            return typeface;
+        }
+    }
+
+    /** Loads the given fonts on a background thread, so the first view that needs them doesn't. */
+    public static void preload(Context context, final String... assets) {
+        final Context applicationContext = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String asset : assets) {
+                    get(applicationContext, asset);
+                }
+            }
+        });
+    }
+}
@@ -8,6 +8,7 @@ import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.animation.GridLayoutAnimationController;
+import android.view.animation.LayoutAnimationController;
 
 /**
  * An extension of RecyclerView, focused more on resembling a GridView.
@@ -22,6 +23,10 @@ import android.view.animation.GridLayoutAnimationController;
  */
 public class StaggeredGridRecyclerView extends RecyclerView {
 
+    private boolean mAnimateFirstPopulationOnly;
+    private boolean mPopulated;
+    private LayoutAnimationController mPendingLayoutAnimation;
+
     public StaggeredGridRecyclerView(Context context) {
         super(context);
     }
@@ -34,6 +39,40 @@ public class StaggeredGridRecyclerView extends RecyclerView {
         super(context, attrs, defStyle);
     }
 
+    /**
+     * When set, the layout animation plays once, for the children shown when the grid is first
+     * populated, and is never scheduled again; later changes are left to the item animator.
+     */
+    public void setAnimateFirstPopulationOnly(boolean firstPopulationOnly) {
+        mAnimateFirstPopulationOnly = firstPopulationOnly;
+        if (firstPopulationOnly && !mPopulated && getLayoutAnimation() != null) {
+            // Hold the animation back until there are children, or it's spent on an empty grid
+            mPendingLayoutAnimation = getLayoutAnimation();
+            setLayoutAnimation(null);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if (mAnimateFirstPopulationOnly && !mPopulated && getChildCount() > 0) {
+            mPopulated = true;
+            if (mPendingLayoutAnimation != null) {
+                // Runs on the draw that follows this layout, for the children laid out so far
+                setLayoutAnimation(mPendingLayoutAnimation);
+                mPendingLayoutAnimation = null;
+            }
+        }
+    }
+
+    @Override
+    public void scheduleLayoutAnimation() {
+        if (mAnimateFirstPopulationOnly && mPopulated) {
+            return;
+        }
+        super.scheduleLayoutAnimation();
+    }
+
     @Override
     public void setLayoutManager(LayoutManager layout) {
         if (layout instanceof StaggeredGridLayoutManager) {
@@ -48,6 +87,8 @@ public class StaggeredGridRecyclerView extends RecyclerView {
 
         if (getAdapter() != null && getLayoutManager() instanceof StaggeredGridLayoutManager) {
 
+            // The parameters live in the child's layout params, which recycling keeps, so they
+            // are only allocated once per child view
             GridLayoutAnimationController.AnimationParameters animationParams =
                     (GridLayoutAnimationController.AnimationParameters) params.layoutAnimationParameters;
 
@@ -61,11 +102,13 @@ public class StaggeredGridRecyclerView extends RecyclerView {
             animationParams.count = count;
             animationParams.index = index;
             animationParams.columnsCount = columns;
-            animationParams.rowsCount = count / columns;
+            animationParams.rowsCount = (count + columns - 1) / columns;
 
-            final int invertedIndex = count - 1 - index;
-            animationParams.column = columns - 1 - (invertedIndex % columns);
-            animationParams.row = animationParams.rowsCount - 1 - invertedIndex / columns;
+            // Animate each child from the span it's actually in, not one guessed from its index
+            int spanIndex = params instanceof StaggeredGridLayoutManager.LayoutParams
+                    ? ((StaggeredGridLayoutManager.LayoutParams) params).getSpanIndex() : -1;
+            animationParams.column = spanIndex >= 0 ? spanIndex : index % columns;
+            animationParams.row = index / columns;
 
         } else {
             super.attachLayoutAnimationParameters(child, params, index, count);